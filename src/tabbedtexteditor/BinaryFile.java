@@ -0,0 +1,225 @@
+/*
+ * A binary file read through memory-mapped pages, so only the parts looked
+ * at are brought into memory whatever the file's size. Edits replace bytes
+ * in place and are kept as a list of patches over the mapped content;
+ * saving writes just the patched bytes back.
+ */
+package tabbedtexteditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+
+final class BinaryFile {
+
+    private static final int PAGE_SIZE = 1 << 20;
+    private static final int MAX_MAPPED_PAGES = 16;
+    private static final int SNIFF_BYTES = 8192;
+    private static final int SEARCH_WINDOW = 16 << 20;
+
+    private final Path path;
+    // A temporary copy, such as inflated content, is only looked at and is
+    // deleted once closed
+    private final boolean temporary;
+    private final FileChannel channel;
+    private final long size;
+    private final Map<Long, MappedByteBuffer> pages = new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+            return size() > MAX_MAPPED_PAGES;
+        }
+    };
+    // Edited bytes by offset, over the file's content
+    private final TreeMap<Long, Byte> patches = new TreeMap<>();
+
+    BinaryFile(Path path) throws IOException {
+        this(path, false);
+    }
+
+    private BinaryFile(Path path, boolean temporary) throws IOException {
+        this.path = path;
+        this.temporary = temporary;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    // A NUL byte, or more than one in ten other control characters, near
+    // the start of the file
+    static boolean looksBinary(Path path) throws IOException {
+        byte[] head = new byte[SNIFF_BYTES];
+        int length;
+        try (InputStream in = Files.newInputStream(path)) {
+            length = in.readNBytes(head, 0, head.length);
+        }
+        return looksBinary(head, length);
+    }
+
+    static boolean looksBinary(byte[] head, int length) {
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xff;
+            if (b == 0) {
+                return true;
+            }
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1b) {
+                control++;
+            }
+        }
+        return control * 10 > length;
+    }
+
+    static BinaryFile temporary(Path path) throws IOException {
+        return new BinaryFile(path, true);
+    }
+
+    boolean isReadOnly() {
+        return temporary;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int byteAt(long offset) throws IOException {
+        Byte patched = patches.get(offset);
+        if (patched != null) {
+            return patched & 0xff;
+        }
+        return originalByteAt(offset);
+    }
+
+    private int originalByteAt(long offset) throws IOException {
+        long pageStart = offset - offset % PAGE_SIZE;
+        MappedByteBuffer page = pages.get(pageStart);
+        if (page == null) {
+            page = channel.map(FileChannel.MapMode.READ_ONLY, pageStart, Math.min(PAGE_SIZE, size - pageStart));
+            pages.put(pageStart, page);
+        }
+        return page.get((int) (offset - pageStart)) & 0xff;
+    }
+
+    boolean isPatched(long offset) {
+        return patches.containsKey(offset);
+    }
+
+    // Setting a byte back to what the file has drops its patch
+    void setByte(long offset, int value) throws IOException {
+        if (originalByteAt(offset) == value) {
+            patches.remove(offset);
+        } else {
+            patches.put(offset, (byte) value);
+        }
+    }
+
+    boolean isModified() {
+        return !patches.isEmpty();
+    }
+
+    int patchCount() {
+        return patches.size();
+    }
+
+    // For a search running on another thread
+    NavigableMap<Long, Byte> patchSnapshot() {
+        return new TreeMap<>(patches);
+    }
+
+    // Adjacent patched bytes are written together
+    void save() throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            Map.Entry<Long, Byte> entry = patches.firstEntry();
+            while (entry != null) {
+                long start = entry.getKey();
+                long end = start;
+                while (patches.containsKey(end)) {
+                    end++;
+                }
+                ByteBuffer run = ByteBuffer.allocate((int) (end - start));
+                for (long offset = start; offset < end; offset++) {
+                    run.put(patches.get(offset));
+                }
+                run.flip();
+                long position = start;
+                while (run.hasRemaining()) {
+                    position += out.write(run, position);
+                }
+                entry = patches.ceilingEntry(end);
+            }
+        }
+        patches.clear();
+        pages.clear();
+    }
+
+    void close() {
+        pages.clear();
+        try {
+            channel.close();
+            if (temporary) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * First match of pattern starting in [from, to), or -1. The file is
+     * mapped one window at a time, windows overlapping by the pattern's
+     * length so no match is split between two. Windows holding patches are
+     * copied and patched first so edits are found as they are shown.
+     * Boyer-Moore-Horspool skips ahead by up to the pattern's length.
+     */
+    long find(byte[] pattern, long from, long to, NavigableMap<Long, Byte> patched, BooleanSupplier cancelled)
+            throws IOException {
+        int n = pattern.length;
+        int[] shift = new int[256];
+        Arrays.fill(shift, n);
+        for (int i = 0; i < n - 1; i++) {
+            shift[pattern[i] & 0xff] = n - 1 - i;
+        }
+        for (long start = from; start < to && start + n <= size; start += SEARCH_WINDOW) {
+            if (cancelled.getAsBoolean()) {
+                return -1;
+            }
+            int length = (int) Math.min(size - start, SEARCH_WINDOW + n - 1L);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            NavigableMap<Long, Byte> inWindow = patched.subMap(start, true, start + length, false);
+            if (!inWindow.isEmpty()) {
+                byte[] copy = new byte[length];
+                window.get(copy);
+                for (Map.Entry<Long, Byte> entry : inWindow.entrySet()) {
+                    copy[(int) (entry.getKey() - start)] = entry.getValue();
+                }
+                window = ByteBuffer.wrap(copy);
+            }
+            long limit = Math.min(length - n, to - start - 1);
+            int i = 0;
+            while (i <= limit) {
+                int j = n - 1;
+                while (j >= 0 && window.get(i + j) == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return start + i;
+                }
+                i += shift[window.get(i + n - 1) & 0xff];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Side-by-side view of a line diff. Both sides share one list row per
+ * aligned line pair, so they always scroll together and only the visible
+ * rows are laid out.
+ */
+package tabbedtexteditor;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ToolBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+class CompareView extends BorderPane {
+
+    private static final int MAX_SHOWN_CHARS = 1000;
+    private static final String DELETED_STYLE = "-fx-background-color: rgba(255, 80, 80, 0.25);";
+    private static final String INSERTED_STYLE = "-fx-background-color: rgba(80, 200, 80, 0.25);";
+    private static final String CHANGED_STYLE = "-fx-background-color: rgba(80, 140, 255, 0.25);";
+    private static final String FILLER_STYLE = "-fx-background-color: rgba(128, 128, 128, 0.12);";
+
+    private final LineDiff diff;
+    // Line shown on each side of a row, or -1 where the other side has extra lines
+    private final int[] rowLinesA;
+    private final int[] rowLinesB;
+    private final int[] hunkRows;
+    private final ListView<Integer> rows = new ListView<>();
+
+    CompareView(LineDiff diff, String nameA, String nameB) {
+        this.diff = diff;
+
+        int rowCount = diff.lineCountA();
+        for (LineDiff.Hunk hunk : diff.hunks) {
+            rowCount += Math.max(0, (hunk.endB - hunk.startB) - (hunk.endA - hunk.startA));
+        }
+        rowLinesA = new int[rowCount];
+        rowLinesB = new int[rowCount];
+        hunkRows = new int[diff.hunks.size()];
+        int row = 0;
+        int lineA = 0;
+        int lineB = 0;
+        for (int h = 0; h <= diff.hunks.size(); h++) {
+            LineDiff.Hunk hunk = h < diff.hunks.size() ? diff.hunks.get(h) : null;
+            int unchangedEnd = hunk != null ? hunk.startA : diff.lineCountA();
+            while (lineA < unchangedEnd) {
+                rowLinesA[row] = lineA++;
+                rowLinesB[row++] = lineB++;
+            }
+            if (hunk == null) {
+                break;
+            }
+            hunkRows[h] = row;
+            int height = Math.max(hunk.endA - hunk.startA, hunk.endB - hunk.startB);
+            for (int i = 0; i < height; i++, row++) {
+                rowLinesA[row] = hunk.startA + i < hunk.endA ? hunk.startA + i : -1;
+                rowLinesB[row] = hunk.startB + i < hunk.endB ? hunk.startB + i : -1;
+            }
+            lineA = hunk.endA;
+            lineB = hunk.endB;
+        }
+
+        int count = rowCount;
+        rows.setItems(FXCollections.observableList(new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        }));
+        rows.setCellFactory(list -> new RowCell());
+
+        Button previousButton = new Button("Previous Difference");
+        previousButton.setOnAction(e -> goToDifference(false));
+        Button nextButton = new Button("Next Difference");
+        nextButton.setOnAction(e -> goToDifference(true));
+        Label summary = new Label(diff.hunks.isEmpty() ? "No differences"
+                : diff.hunks.size() == 1 ? "1 difference" : diff.hunks.size() + " differences");
+        ToolBar toolBar = new ToolBar(previousButton, nextButton, summary);
+
+        Label headerA = createSideLabel();
+        headerA.setText(nameA);
+        Label headerB = createSideLabel();
+        headerB.setText(nameB);
+        HBox headers = new HBox(headerA, headerB);
+        headers.setPadding(new Insets(4, 0, 4, 0));
+
+        setTop(new VBox(toolBar, headers));
+        setCenter(rows);
+    }
+
+    // Selects the first difference after (or the last one before) the
+    // selected row
+    void goToDifference(boolean forward) {
+        if (hunkRows.length == 0) {
+            return;
+        }
+        int selected = rows.getSelectionModel().getSelectedIndex();
+        int index = Arrays.binarySearch(hunkRows, selected);
+        int target;
+        if (forward) {
+            target = index >= 0 ? index + 1 : -index - 1;
+            if (target >= hunkRows.length) {
+                return;
+            }
+        } else {
+            target = index >= 0 ? index - 1 : -index - 2;
+            if (target < 0) {
+                return;
+            }
+        }
+        rows.getSelectionModel().select(hunkRows[target]);
+        rows.scrollTo(Math.max(0, hunkRows[target] - 3));
+    }
+
+    private static Label createSideLabel() {
+        Label label = new Label();
+        label.setFont(Font.font("Monospaced", 12));
+        label.setMinWidth(0);
+        label.setPrefWidth(0);
+        label.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(label, Priority.ALWAYS);
+        return label;
+    }
+
+    private final class RowCell extends ListCell<Integer> {
+
+        private final Label sideA = createSideLabel();
+        private final Label sideB = createSideLabel();
+        private final HBox box = new HBox(sideA, sideB);
+
+        @Override
+        protected void updateItem(Integer row, boolean empty) {
+            super.updateItem(row, empty);
+            if (empty || row == null) {
+                setGraphic(null);
+                return;
+            }
+            int lineA = rowLinesA[row];
+            int lineB = rowLinesB[row];
+            sideA.setText(format(diff.textA, diff.linesA, lineA));
+            sideB.setText(format(diff.textB, diff.linesB, lineB));
+            boolean changed = isChanged(row);
+            sideA.setStyle(!changed ? "" : lineA < 0 ? FILLER_STYLE : lineB < 0 ? DELETED_STYLE : CHANGED_STYLE);
+            sideB.setStyle(!changed ? "" : lineB < 0 ? FILLER_STYLE : lineA < 0 ? INSERTED_STYLE : CHANGED_STYLE);
+            setGraphic(box);
+        }
+
+        private boolean isChanged(int row) {
+            int index = Arrays.binarySearch(hunkRows, row);
+            int hunk = index >= 0 ? index : -index - 2;
+            if (hunk < 0) {
+                return false;
+            }
+            LineDiff.Hunk h = diff.hunks.get(hunk);
+            return row - hunkRows[hunk] < Math.max(h.endA - h.startA, h.endB - h.startB);
+        }
+
+        private String format(String text, int[] lines, int line) {
+            if (line < 0) {
+                return "";
+            }
+            String content = LineDiff.line(text, lines, line, MAX_SHOWN_CHARS);
+            return String.format("%6d  %s", line + 1, content.replace("\t", "    "));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Reading and writing .gz files and single entries of .zip files. Both
+ * directions stream through the compressor, so the compressed file is
+ * never held in memory. Content that turns out large or binary while it
+ * is inflated is spilled to a temporary file, to be shown a page at a
+ * time, as text or as hex, rather than as one string.
+ */
+package tabbedtexteditor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+final class CompressedFiles {
+
+    // Inflated content beyond this goes to a temporary file
+    private static final int MAX_IN_MEMORY_BYTES = 32 << 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedFiles() {
+    }
+
+    // Either text, or a temporary file holding large or binary content
+    static final class Inflated {
+
+        final String text;
+        final Path spilled;
+        final boolean binary;
+
+        Inflated(String text, Path spilled, boolean binary) {
+            this.text = text;
+            this.spilled = spilled;
+            this.binary = binary;
+        }
+    }
+
+    static boolean isGzip(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    static boolean isZip(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    static boolean isCompressed(Path path) {
+        return isGzip(path) || isZip(path);
+    }
+
+    // Name of the document inside: app.log for app.log.gz, or the entry's
+    // own file name
+    static String innerName(Path path, String entry) {
+        if (entry != null) {
+            return entry.substring(entry.lastIndexOf('/') + 1);
+        }
+        String name = path.getFileName().toString();
+        return name.substring(0, name.length() - ".gz".length());
+    }
+
+    // Files in a zip, in archive order
+    static List<String> zipEntries(Path zip) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipFile file = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    names.add(entry.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    // A gz file, or with entry the named entry of a zip file
+    static Inflated inflate(Path path, String entry) throws IOException {
+        if (entry == null) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+                return inflate(in, innerName(path, null));
+            }
+        }
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            ZipEntry zipEntry = zip.getEntry(entry);
+            if (zipEntry == null) {
+                throw new IOException("No entry " + entry + " in " + path.getFileName());
+            }
+            try (InputStream in = zip.getInputStream(zipEntry)) {
+                return inflate(in, innerName(path, entry));
+            }
+        }
+    }
+
+    // Only the text, for comparing against; spilled content is too large
+    static String readText(Path path, String entry) throws IOException {
+        Inflated inflated = inflate(path, entry);
+        if (inflated.spilled != null) {
+            Files.deleteIfExists(inflated.spilled);
+            throw new IOException("The saved file is too large or not text.");
+        }
+        return inflated.text;
+    }
+
+    private static Inflated inflate(InputStream in, String name) throws IOException {
+        ByteArrayOutputStream held = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            held.write(buffer, 0, count);
+            boolean binary = held.size() == count && BinaryFile.looksBinary(buffer, Math.min(count, 8192));
+            if (binary || held.size() > MAX_IN_MEMORY_BYTES) {
+                return new Inflated(null, spill(held, in, name), binary);
+            }
+        }
+        return new Inflated(new String(held.toByteArray(), Charset.defaultCharset()), null, false);
+    }
+
+    // What was read so far, then the rest of the stream
+    private static Path spill(ByteArrayOutputStream held, InputStream rest, String name) throws IOException {
+        Path temp = Files.createTempFile("inflated-", "-" + name);
+        temp.toFile().deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            held.writeTo(out);
+            rest.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    // Written beside the old file and moved over it, so a failed save leaves
+    // the old file as it was
+    static void writeGzip(Path path, String text, int level) throws IOException {
+        replace(path, file -> {
+            try (Writer out = new OutputStreamWriter(leveled(file, level), Charset.defaultCharset())) {
+                out.write(text);
+            }
+        });
+    }
+
+    private static GZIPOutputStream leveled(OutputStream out, int level) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /*
+     * Replaces one entry, or adds it. A zip cannot be changed in place, so
+     * the other entries are copied into a new archive beside it, which then
+     * replaces the old one; a failed save leaves the old archive as it was.
+     */
+    static void writeZipEntry(Path path, String entry, String text, int level) throws IOException {
+        if (!Files.exists(path)) {
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                out.setLevel(level);
+                writeEntry(out, entry, text);
+            }
+            return;
+        }
+        replace(path, file -> {
+            try (ZipFile in = new ZipFile(path.toFile());
+                 ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(file))) {
+                out.setLevel(level);
+                boolean written = false;
+                Enumeration<? extends ZipEntry> entries = in.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry original = entries.nextElement();
+                    if (original.getName().equals(entry)) {
+                        writeEntry(out, entry, text);
+                        written = true;
+                    } else {
+                        ZipEntry copy = new ZipEntry(original);
+                        // Recompressed at the new level, so its size will differ
+                        if (copy.getMethod() == ZipEntry.DEFLATED) {
+                            copy.setCompressedSize(-1);
+                        }
+                        out.putNextEntry(copy);
+                        try (InputStream data = in.getInputStream(original)) {
+                            data.transferTo(out);
+                        }
+                        out.closeEntry();
+                    }
+                }
+                if (!written) {
+                    writeEntry(out, entry, text);
+                }
+            }
+        });
+    }
+
+    private interface Contents {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // A new file is written directly. An existing one is replaced by a
+    // temporary file in the same directory, which first takes on the old
+    // file's permissions instead of the owner-only ones it is created with.
+    private static void replace(Path path, Contents contents) throws IOException {
+        if (!Files.exists(path)) {
+            try (OutputStream out = Files.newOutputStream(path)) {
+                contents.writeTo(out);
+            }
+            return;
+        }
+        String name = path.getFileName().toString();
+        String suffix = name.substring(name.lastIndexOf('.')) + ".tmp";
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), ".", suffix);
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                contents.writeTo(out);
+            }
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+            } catch (UnsupportedOperationException e) {
+                // No POSIX permissions to copy on this file system
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream out, String entry, String text) throws IOException {
+        out.putNextEntry(new ZipEntry(entry));
+        // Not closed, which would close the archive; flushed into the entry
+        Writer writer = new OutputStreamWriter(out, Charset.defaultCharset());
+        writer.write(text);
+        writer.flush();
+        out.closeEntry();
+    }
+}
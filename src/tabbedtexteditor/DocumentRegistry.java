@@ -0,0 +1,120 @@
+/*
+ * Open documents by tab, with their files keyed by canonical path so a file
+ * reached through another path or a symlink is found in constant time.
+ * Tabs are kept in order of use; only a limited number are shown in the
+ * tab strip, the least recently used others are parked out of it.
+ */
+package tabbedtexteditor;
+
+import javafx.scene.control.Tab;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class DocumentRegistry {
+
+    private final Map<Path, Tab> tabsByPath = new HashMap<>();
+    private final Map<Tab, Path> paths = new HashMap<>();
+    // Access ordered, least recently used first
+    private final Map<Tab, Boolean> shown = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Tab> parked = new LinkedHashSet<>();
+
+    static Path keyOf(File file) {
+        try {
+            return file.getCanonicalFile().toPath();
+        } catch (IOException e) {
+            return file.getAbsoluteFile().toPath().normalize();
+        }
+    }
+
+    Tab find(File file) {
+        return tabsByPath.get(keyOf(file));
+    }
+
+    boolean contains(Tab tab) {
+        return shown.containsKey(tab) || parked.contains(tab);
+    }
+
+    void add(Tab tab, File file) {
+        shown.put(tab, Boolean.TRUE);
+        setFile(tab, file);
+    }
+
+    // After Save As, or with null for a document without a file
+    void setFile(Tab tab, File file) {
+        Path old = paths.remove(tab);
+        if (old != null) {
+            tabsByPath.remove(old);
+        }
+        if (file != null) {
+            Path path = keyOf(file);
+            tabsByPath.put(path, tab);
+            paths.put(tab, path);
+        }
+    }
+
+    void remove(Tab tab) {
+        setFile(tab, null);
+        shown.remove(tab);
+        parked.remove(tab);
+    }
+
+    void used(Tab tab) {
+        if (shown.containsKey(tab)) {
+            shown.get(tab);
+        }
+    }
+
+    boolean isParked(Tab tab) {
+        return parked.contains(tab);
+    }
+
+    int shownCount() {
+        return shown.size();
+    }
+
+    // The shown tab used longest ago, other than except
+    Tab leastRecentlyShown(Tab except) {
+        for (Tab tab : shown.keySet()) {
+            if (tab != except) {
+                return tab;
+            }
+        }
+        return null;
+    }
+
+    void park(Tab tab) {
+        if (shown.remove(tab) != null) {
+            parked.add(tab);
+        }
+    }
+
+    void unpark(Tab tab) {
+        if (parked.remove(tab)) {
+            shown.put(tab, Boolean.TRUE);
+        }
+    }
+
+    List<Tab> parkedTabs() {
+        return new ArrayList<>(parked);
+    }
+
+    // Shown tabs from the most recently used, then parked ones; tabs are
+    // parked least recently used first, so the last parked comes first
+    List<Tab> mostRecentFirst() {
+        List<Tab> tabs = new ArrayList<>(shown.keySet());
+        Collections.reverse(tabs);
+        List<Tab> parkedTabs = new ArrayList<>(parked);
+        Collections.reverse(parkedTabs);
+        tabs.addAll(parkedTabs);
+        return tabs;
+    }
+}
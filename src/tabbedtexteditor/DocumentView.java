@@ -0,0 +1,610 @@
+/*
+ * Editor content of a tab: the text area, its line index and attached views
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import javafx.geometry.Point2D;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.IndexRange;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextFormatter;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+class DocumentView extends BorderPane {
+
+    private static final KeyCombination UNDO_KEY = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination REDO_KEY =
+            new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+    private static final KeyCombination REDO_ALT_KEY = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+    private static final int MAX_COMPLETIONS = 12;
+    private static final int MAX_SPELLING_SUGGESTIONS = 6;
+
+    interface EditListener {
+        void edited(Edit edit);
+    }
+
+    enum Source {
+        TYPED, UNDO, REDO, OTHER
+    }
+
+    // A single replacement of removedLength chars at start by insertedLength chars
+    static final class Edit {
+
+        final int start;
+        final int removedLength;
+        final int insertedLength;
+        final String oldText;
+        final String newText;
+        final Source source;
+
+        Edit(int start, int removedLength, int insertedLength, String oldText, String newText, Source source) {
+            this.start = start;
+            this.removedLength = removedLength;
+            this.insertedLength = insertedLength;
+            this.oldText = oldText;
+            this.newText = newText;
+            this.source = source;
+        }
+
+        int lineDelta() {
+            return countNewlines(newText, start, start + insertedLength)
+                    - countNewlines(oldText, start, start + removedLength);
+        }
+
+        private static int countNewlines(String text, int from, int to) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (text.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private final TextArea textArea;
+    private final LineIndex lineIndex;
+    private final List<EditListener> editListeners = new ArrayList<>();
+    private final FoldModel folds = new FoldModel(this);
+    private final StructureIndex structure = new StructureIndex();
+    private final Minimap minimap;
+    private final StackPane editorStack;
+    private final StyleLayer styleLayer;
+    private StyleRuns styles;
+    private SpellChecker spellChecker;
+    private WordIndex wordIndex;
+    private DocumentWords words;
+    private EditListener wordsListener;
+
+    private boolean internalEdit;
+    private Source historySource = Source.OTHER;
+    private boolean hasPendingChange;
+    private int pendingStart;
+    private int pendingEnd;
+    private int pendingInserted;
+    private double lineHeight;
+    private double baselineOffset;
+
+    DocumentView(String content) {
+        textArea = new TextArea(content);
+        textArea.setFont(Font.font("Segoe UI", 12));
+        lineIndex = new LineIndex(content);
+
+        // The formatter records where a change happens so listeners get the
+        // edited range without comparing whole documents. It also keeps user
+        // edits off fold placeholders, unfolding them instead.
+        textArea.setTextFormatter(new TextFormatter<>(change -> {
+            if (change.isContentChange()) {
+                int start = change.getRangeStart();
+                int end = change.getRangeEnd();
+                if (!internalEdit && folds.touches(start, end)) {
+                    Platform.runLater(() -> folds.unfoldRange(start, end));
+                    return null;
+                }
+                hasPendingChange = true;
+                pendingStart = start;
+                pendingEnd = end;
+                pendingInserted = change.getText().length();
+            }
+            return change;
+        }));
+        textArea.textProperty().addListener((obs, oldText, newText) -> dispatchEdit(oldText, newText));
+        textArea.addEventHandler(MouseEvent.MOUSE_CLICKED, e -> {
+            if (e.getClickCount() == 2) {
+                unfoldAtCaret();
+            }
+        });
+        // Undo and redo are routed through this view so listeners can tell
+        // them apart; both change the text without going through the formatter
+        textArea.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (UNDO_KEY.match(e)) {
+                undo();
+                e.consume();
+            } else if (REDO_KEY.match(e) || REDO_ALT_KEY.match(e)) {
+                redo();
+                e.consume();
+            }
+        });
+        textArea.setContextMenu(createContextMenu());
+
+        styles = new StyleRuns(textArea.getLength());
+        textArea.fontProperty().addListener(o -> lineHeight = 0);
+
+        // Styles first, so the fold model can put back the styles of text it
+        // brings back
+        addEditListener(edit -> styles.edited(edit.start, edit.removedLength, edit.insertedLength));
+        addEditListener(folds::edited);
+        addEditListener(structure::edited);
+        minimap = new Minimap(this);
+        styleLayer = new StyleLayer(this);
+
+        // Overlays such as the spell checker's underlines go above the text
+        editorStack = new StackPane(textArea, styleLayer);
+        setCenter(editorStack);
+        setRight(minimap);
+    }
+
+    TextArea getTextArea() {
+        return textArea;
+    }
+
+    LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    Minimap getMinimap() {
+        return minimap;
+    }
+
+    void setMinimapVisible(boolean visible) {
+        minimap.setVisible(visible);
+        minimap.setManaged(visible);
+    }
+
+    void setLanguage(String fileName) {
+        structure.setMode(StructureIndex.Mode.forFileName(fileName));
+        setSpellChecking(SpellChecker.isChecked(fileName));
+    }
+
+    private void setSpellChecking(boolean enabled) {
+        if (enabled && spellChecker == null) {
+            spellChecker = new SpellChecker(this);
+            editorStack.getChildren().add(spellChecker);
+        } else if (!enabled && spellChecker != null) {
+            spellChecker.dispose();
+            editorStack.getChildren().remove(spellChecker);
+            spellChecker = null;
+        }
+    }
+
+    // First and last line on screen
+    int[] visibleLines() {
+        int lastLine = Math.max(0, lineIndex.lineCount() - 1);
+        double height = lineHeight();
+        int first = Math.min(lastLine, (int) (textArea.getScrollTop() / height));
+        int last = Math.min(lastLine, first + (int) Math.ceil(textArea.getHeight() / height) + 1);
+        return new int[] {first, last};
+    }
+
+    double lineHeight() {
+        measureFont();
+        return lineHeight;
+    }
+
+    double baselineOffset() {
+        measureFont();
+        return baselineOffset;
+    }
+
+    private void measureFont() {
+        if (lineHeight <= 0) {
+            Text probe = new Text("Xg");
+            probe.setFont(textArea.getFont());
+            lineHeight = Math.max(1, probe.getLayoutBounds().getHeight());
+            baselineOffset = probe.getBaselineOffset();
+        }
+    }
+
+    StyleRuns getStyleRuns() {
+        return styles;
+    }
+
+    // Styles read with the document; ignored if they do not cover its text
+    void setStyleRuns(StyleRuns runs) {
+        if (runs.length() == textArea.getLength()) {
+            styles = runs;
+            styleLayer.refresh();
+        }
+    }
+
+    // Style of the selection's first character, or of the one at the caret
+    TextStyle getSelectionStyle() {
+        return styles.styleAt(textArea.getSelection().getStart());
+    }
+
+    // Changes the style of the selection, or of all text if nothing is selected
+    void restyleSelection(UnaryOperator<TextStyle> change) {
+        IndexRange selection = textArea.getSelection();
+        if (selection.getLength() > 0) {
+            styles.restyle(selection.getStart(), selection.getEnd(), change);
+        } else {
+            styles.restyle(0, textArea.getLength(), change);
+        }
+        styleLayer.refresh();
+    }
+
+    // Styles matching getFullText(), folded text included
+    StyleRuns getFullTextStyles() {
+        return folds.expandStyles(styles);
+    }
+
+    // Document text with every folded region expanded
+    String getFullText() {
+        return folds.expand(textArea.getText());
+    }
+
+    // Offset in getFullText() of an offset in the shown text; a folded
+    // region counts in full once the offset is past its placeholder
+    int fullTextOffset(int offset) {
+        int full = offset;
+        for (int[] fold : folds.expansions()) {
+            if (fold[0] >= offset) {
+                break;
+            }
+            full += fold[1] - 1;
+        }
+        return full;
+    }
+
+    // Top-level folds as [placeholder offset, expanded length], in order
+    List<int[]> foldExpansions() {
+        return folds.expansions();
+    }
+
+    // Selects [start, end) of getFullText(), first unfolding whatever folds
+    // hide part of it
+    void revealFullText(int start, int end) {
+        while (true) {
+            int[] hiding = null;
+            int shift = 0;
+            for (int[] fold : folds.expansions()) {
+                int foldStart = fold[0] + shift;
+                if (foldStart >= end) {
+                    break;
+                }
+                if (foldStart + fold[1] > start) {
+                    hiding = fold;
+                    break;
+                }
+                shift += fold[1] - 1;
+            }
+            if (hiding == null) {
+                textArea.selectRange(start - shift, end - shift);
+                return;
+            }
+            folds.unfoldRange(hiding[0], hiding[0] + 1);
+        }
+    }
+
+    // Case is ignored char by char, as regionMatches does, rather than on
+    // a lowercased copy whose length and offsets can differ from the text
+    static int indexOf(String text, String term, int from, boolean matchCase) {
+        if (matchCase) {
+            return text.indexOf(term, from);
+        }
+        char first = Character.toLowerCase(Character.toUpperCase(term.charAt(0)));
+        for (int i = from, last = text.length() - term.length(); i <= last; i++) {
+            if (Character.toLowerCase(Character.toUpperCase(text.charAt(i))) == first
+                    && text.regionMatches(true, i, term, 0, term.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Replaces the whole document as one undoable change, dropping all folds
+    // until it is undone
+    void setFullText(String text) {
+        folds.replaceAll(text);
+    }
+
+    // Adds this document's words to the index shared by all tabs
+    void attachWordIndex(WordIndex index) {
+        wordIndex = index;
+        words = new DocumentWords(index, getFullText());
+        // Folding hides words without removing them from the document
+        wordsListener = edit -> {
+            if (!folds.isLayoutEdit()) {
+                words.edited(edit);
+            }
+        };
+        addEditListener(wordsListener);
+    }
+
+    void detachWordIndex() {
+        if (words != null) {
+            removeEditListener(wordsListener);
+            words.detach();
+            words = null;
+        }
+    }
+
+    // Completes the word before the caret: directly when there is only one
+    // candidate, otherwise from a menu at the caret
+    void completeWord() {
+        if (wordIndex == null) {
+            return;
+        }
+        String text = textArea.getText();
+        int caret = textArea.getCaretPosition();
+        int start = caret;
+        while (start > 0 && WordIndex.isWordChar(text.charAt(start - 1))) {
+            start--;
+        }
+        if (start == caret) {
+            return;
+        }
+        String prefix = text.substring(start, caret);
+        List<String> candidates = wordIndex.complete(prefix, MAX_COMPLETIONS);
+        if (candidates.size() == 1) {
+            textArea.replaceText(start, caret, candidates.get(0));
+        } else if (!candidates.isEmpty()) {
+            int wordStart = start;
+            ContextMenu menu = new ContextMenu();
+            for (String word : candidates) {
+                MenuItem item = new MenuItem(word);
+                item.setOnAction(e -> {
+                    // Only if the prefix is still where it was
+                    if (caret <= textArea.getLength() && textArea.getText(wordStart, caret).equals(prefix)) {
+                        textArea.replaceText(wordStart, caret, word);
+                    }
+                });
+                menu.getItems().add(item);
+            }
+            Point2D location = textArea.getInputMethodRequests().getTextLocation(0);
+            menu.show(textArea, location.getX(), location.getY());
+        }
+    }
+
+    // Folding and unfolding are in the text area's history but are not
+    // edits; undo and redo step over them to the next real change
+    void undo() {
+        if (!folds.hasContentToUndo()) {
+            return;
+        }
+        historySource = Source.UNDO;
+        try {
+            while (folds.undoesLayout() && textArea.isUndoable()) {
+                textArea.undo();
+            }
+            textArea.undo();
+        } finally {
+            historySource = Source.OTHER;
+        }
+    }
+
+    void redo() {
+        historySource = Source.REDO;
+        try {
+            textArea.redo();
+            while (folds.redoesLayout() && textArea.isRedoable()) {
+                textArea.redo();
+            }
+        } finally {
+            historySource = Source.OTHER;
+        }
+    }
+
+    // Same entries as the text area's own menu, which would undo behind our back
+    private ContextMenu createContextMenu() {
+        MenuItem undoItem = new MenuItem("Undo");
+        undoItem.setOnAction(e -> undo());
+        MenuItem redoItem = new MenuItem("Redo");
+        redoItem.setOnAction(e -> redo());
+        MenuItem cutItem = new MenuItem("Cut");
+        cutItem.setOnAction(e -> textArea.cut());
+        MenuItem copyItem = new MenuItem("Copy");
+        copyItem.setOnAction(e -> textArea.copy());
+        MenuItem pasteItem = new MenuItem("Paste");
+        pasteItem.setOnAction(e -> textArea.paste());
+        MenuItem deleteItem = new MenuItem("Delete");
+        deleteItem.setOnAction(e -> textArea.deleteText(textArea.getSelection()));
+        MenuItem selectAllItem = new MenuItem("Select All");
+        selectAllItem.setOnAction(e -> textArea.selectAll());
+
+        ContextMenu menu = new ContextMenu(undoItem, redoItem, new SeparatorMenuItem(),
+                cutItem, copyItem, pasteItem, deleteItem, new SeparatorMenuItem(), selectAllItem);
+        List<MenuItem> spellingItems = new ArrayList<>();
+        menu.setOnShowing(e -> {
+            menu.getItems().removeAll(spellingItems);
+            spellingItems.clear();
+            addSpellingSuggestions(spellingItems);
+            menu.getItems().addAll(0, spellingItems);
+            boolean selected = textArea.getSelection().getLength() > 0;
+            undoItem.setDisable(!textArea.isUndoable());
+            redoItem.setDisable(!textArea.isRedoable());
+            cutItem.setDisable(!selected);
+            copyItem.setDisable(!selected);
+            deleteItem.setDisable(!selected);
+        });
+        return menu;
+    }
+
+    // Replacements for the misspelled word at the caret, if there is one
+    private void addSpellingSuggestions(List<MenuItem> items) {
+        int[] word = spellChecker != null ? spellChecker.misspellingAt(textArea.getCaretPosition()) : null;
+        if (word == null) {
+            return;
+        }
+        String misspelled = textArea.getText(word[0], word[1]);
+        for (String suggestion : spellChecker.suggestions(misspelled, MAX_SPELLING_SUGGESTIONS)) {
+            MenuItem item = new MenuItem(suggestion);
+            item.setOnAction(e -> {
+                if (word[1] <= textArea.getLength() && textArea.getText(word[0], word[1]).equals(misspelled)) {
+                    textArea.replaceText(word[0], word[1], suggestion);
+                }
+            });
+            items.add(item);
+        }
+        if (items.isEmpty()) {
+            MenuItem none = new MenuItem("No Suggestions");
+            none.setDisable(true);
+            items.add(none);
+        }
+        items.add(new SeparatorMenuItem());
+    }
+
+    boolean isInternalEdit() {
+        return internalEdit;
+    }
+
+    // Changes made on behalf of the fold model bypass the placeholder guard
+    void replaceInternal(int start, int end, String text) {
+        internalEdit = true;
+        try {
+            textArea.replaceText(start, end, text);
+        } finally {
+            internalEdit = false;
+        }
+    }
+
+    void foldAtCaret() {
+        int caret = textArea.getCaretPosition();
+        String text = textArea.getText();
+        int line = lineIndex.lineOfOffset(caret);
+        int[] range;
+        if (structure.getMode() == StructureIndex.Mode.INDENT) {
+            range = StructureIndex.indentRange(text, lineIndex, line);
+            int indent = StructureIndex.indentOf(text, lineIndex.lineStart(line),
+                    lineIndex.lineEnd(line, text.length()));
+            for (int header = line - 1; range == null && header >= 0 && indent > 0; header--) {
+                int headerIndent = StructureIndex.indentOf(text, lineIndex.lineStart(header),
+                        lineIndex.lineEnd(header, text.length()));
+                if (headerIndent >= 0 && headerIndent < indent) {
+                    range = StructureIndex.indentRange(text, lineIndex, header);
+                    break;
+                }
+            }
+        } else {
+            structure.ensureBuilt(text);
+            range = structure.rangeOpeningOnLine(lineIndex.lineStart(line),
+                    lineIndex.lineEnd(line, text.length()), lineIndex);
+            if (range == null) {
+                range = structure.enclosingRange(caret, lineIndex);
+            }
+        }
+        if (range != null && range[1] > range[0]) {
+            folds.fold(Collections.singletonList(range));
+        }
+    }
+
+    void unfoldAtCaret() {
+        int line = lineIndex.lineOfOffset(textArea.getCaretPosition());
+        folds.unfoldRange(lineIndex.lineStart(line), lineIndex.lineEnd(line, textArea.getLength()) + 1);
+    }
+
+    // Folds the top level of the document: members of a class, entries of the
+    // root JSON object or XML element, or unindented blocks
+    void foldAll() {
+        String text = textArea.getText();
+        List<int[]> ranges = new ArrayList<>();
+        if (structure.getMode() == StructureIndex.Mode.INDENT) {
+            for (int line = 0; line < lineIndex.lineCount(); line++) {
+                if (StructureIndex.indentOf(text, lineIndex.lineStart(line),
+                        lineIndex.lineEnd(line, text.length())) == 0) {
+                    int[] range = StructureIndex.indentRange(text, lineIndex, line);
+                    if (range != null) {
+                        ranges.add(range);
+                        line = lineIndex.lineOfOffset(range[1]);
+                    }
+                }
+            }
+        } else {
+            structure.ensureBuilt(text);
+            ranges = structure.rangesAtDepth(1, lineIndex);
+            if (ranges.isEmpty()) {
+                ranges = structure.rangesAtDepth(0, lineIndex);
+            }
+        }
+        folds.fold(ranges);
+    }
+
+    void unfoldAll() {
+        folds.unfoldAll();
+    }
+
+    // Moves the caret to the bracket or tag matching the one at the caret,
+    // or selects everything between them
+    boolean goToMatchingBracket(boolean select) {
+        structure.ensureBuilt(textArea.getText());
+        int token = structure.tokenAt(textArea.getCaretPosition());
+        if (token < 0) {
+            return false;
+        }
+        int partner = structure.partner(token);
+        if (select) {
+            int open = structure.isOpen(token) ? token : partner;
+            int close = structure.isOpen(token) ? partner : token;
+            textArea.selectRange(structure.tokenStart(open), structure.tokenEnd(close));
+        } else {
+            textArea.positionCaret(structure.tokenStart(partner));
+        }
+        return true;
+    }
+
+    void addEditListener(EditListener listener) {
+        editListeners.add(listener);
+    }
+
+    void removeEditListener(EditListener listener) {
+        editListeners.remove(listener);
+    }
+
+    private void dispatchEdit(String oldText, String newText) {
+        Edit edit;
+        if (hasPendingChange && pendingEnd <= oldText.length()
+                && newText.length() == oldText.length() - (pendingEnd - pendingStart) + pendingInserted) {
+            edit = new Edit(pendingStart, pendingEnd - pendingStart, pendingInserted, oldText, newText, Source.TYPED);
+        } else {
+            edit = diff(oldText, newText, historySource);
+        }
+        hasPendingChange = false;
+
+        lineIndex.applyEdit(edit.start, edit.removedLength, edit.insertedLength, newText);
+        for (EditListener listener : new ArrayList<>(editListeners)) {
+            listener.edited(edit);
+        }
+    }
+
+    // Fallback for changes that bypass the formatter, such as undo and setText
+    private static Edit diff(String oldText, String newText, Source source) {
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        int prefix = 0;
+        int max = Math.min(oldLength, newLength);
+        while (prefix < max && oldText.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && oldText.charAt(oldLength - 1 - suffix) == newText.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        return new Edit(prefix, oldLength - prefix - suffix, newLength - prefix - suffix, oldText, newText, source);
+    }
+}
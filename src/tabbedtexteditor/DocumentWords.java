@@ -0,0 +1,136 @@
+/*
+ * One document's share of the word index. The first count runs in the
+ * background; after that every edit only recounts the words it touched.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+final class DocumentWords {
+
+    private static final ExecutorService SCANNER =
+            Workers.newSingleThreadExecutor("word-index", Thread.MIN_PRIORITY);
+
+    private final WordIndex index;
+    // Occurrences in this document, by word id
+    private int[] counts = new int[256];
+    // Text around edits made before the first count came back, as pairs
+    // of removed and inserted text
+    private List<String> pendingEdits = new ArrayList<>();
+    private boolean detached;
+
+    DocumentWords(WordIndex index, String text) {
+        this.index = index;
+        SCANNER.execute(() -> {
+            Map<String, int[]> words = countWords(text);
+            // Sorted here so the index can take them all in one merge
+            String[] sortedWords = words.keySet().toArray(new String[0]);
+            Arrays.sort(sortedWords);
+            Platform.runLater(() -> {
+                if (detached) {
+                    return;
+                }
+                int[] ids = index.idsOf(sortedWords);
+                for (int i = 0; i < ids.length; i++) {
+                    adjust(ids[i], words.get(sortedWords[i])[0]);
+                }
+                for (int i = 0; i < pendingEdits.size(); i += 2) {
+                    apply(pendingEdits.get(i), pendingEdits.get(i + 1));
+                }
+                pendingEdits = null;
+            });
+        });
+    }
+
+    /*
+     * Outside the edited range, extended to whole words on both sides, the
+     * old and new text are the same; so only the words in that range need
+     * to be taken out and the ones in the new range put in.
+     */
+    void edited(DocumentView.Edit edit) {
+        if (detached) {
+            return;
+        }
+        String removed = edit.oldText.substring(wordStart(edit.oldText, edit.start),
+                wordEnd(edit.oldText, edit.start + edit.removedLength));
+        String inserted = edit.newText.substring(wordStart(edit.newText, edit.start),
+                wordEnd(edit.newText, edit.start + edit.insertedLength));
+        if (pendingEdits != null) {
+            pendingEdits.add(removed);
+            pendingEdits.add(inserted);
+        } else {
+            apply(removed, inserted);
+        }
+    }
+
+    // Takes this document's words out of the index
+    void detach() {
+        detached = true;
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] != 0) {
+                index.adjust(id, -counts[id]);
+            }
+        }
+        counts = new int[0];
+    }
+
+    private void apply(String removed, String inserted) {
+        Map<String, int[]> delta = countWords(inserted);
+        for (Map.Entry<String, int[]> entry : countWords(removed).entrySet()) {
+            delta.computeIfAbsent(entry.getKey(), word -> new int[1])[0] -= entry.getValue()[0];
+        }
+        for (Map.Entry<String, int[]> entry : delta.entrySet()) {
+            if (entry.getValue()[0] != 0) {
+                adjust(index.idOf(entry.getKey()), entry.getValue()[0]);
+            }
+        }
+    }
+
+    private void adjust(int id, int delta) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+        }
+        counts[id] += delta;
+        index.adjust(id, delta);
+    }
+
+    private static Map<String, int[]> countWords(String text) {
+        Map<String, int[]> words = new HashMap<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!WordIndex.isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && WordIndex.isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (WordIndex.isIndexed(text, start, i)) {
+                words.computeIfAbsent(text.substring(start, i), word -> new int[1])[0]++;
+            }
+        }
+        return words;
+    }
+
+    private static int wordStart(String text, int offset) {
+        while (offset > 0 && WordIndex.isWordChar(text.charAt(offset - 1))) {
+            offset--;
+        }
+        return offset;
+    }
+
+    private static int wordEnd(String text, int offset) {
+        while (offset < text.length() && WordIndex.isWordChar(text.charAt(offset))) {
+            offset++;
+        }
+        return offset;
+    }
+}
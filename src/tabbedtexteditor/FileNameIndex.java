@@ -0,0 +1,406 @@
+/*
+ * Names of all files under a folder, for quick open. The tree is walked
+ * once in the background; after that a WatchService reports created and
+ * deleted entries, and only those are added or removed. Names are kept
+ * in one char array with each file linked into its directory's list, so
+ * half a million files take a few arrays rather than objects per file.
+ */
+package tabbedtexteditor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+final class FileNameIndex {
+
+    private static final ExecutorService CRAWLER =
+            Workers.newSingleThreadExecutor("file-index", Thread.MIN_PRIORITY);
+    private static final ExecutorService WATCHER =
+            Workers.newSingleThreadExecutor("file-watch", Thread.MIN_PRIORITY);
+
+    private final Path root;
+    private final Consumer<Path> directoryChanged;
+    private WatchService watchService;
+    private volatile boolean closed;
+    private volatile boolean complete;
+
+    // Directories by id, relative to the root ("" for the root itself);
+    // null once deleted
+    private final List<Path> directories = new ArrayList<>();
+    private final Map<Path, Integer> directoryIds = new HashMap<>();
+    private int[] firstFile = new int[256];
+
+    // Files by id: name range in names, which characters the name has (see
+    // maskOf), directory (-1 once deleted) and the next file in the same
+    // directory (-1 at the end)
+    private char[] names = new char[1 << 16];
+    private int namesLength;
+    private long[] nameMasks = new long[1024];
+    private int[] nameStarts = new int[1024];
+    private int[] nameEnds = new int[1024];
+    private int[] fileDirectories = new int[1024];
+    private int[] nextFiles = new int[1024];
+    private int fileCount;
+    private int deletedCount;
+
+    // Called on the watch thread with the directory whose entries changed
+    FileNameIndex(Path root, Consumer<Path> directoryChanged) {
+        this.root = root;
+        this.directoryChanged = directoryChanged;
+        try {
+            watchService = root.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        CRAWLER.execute(() -> {
+            crawl(root);
+            complete = true;
+            if (watchService != null && !closed) {
+                WATCHER.execute(this::watch);
+            }
+        });
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    synchronized int size() {
+        return fileCount - deletedCount;
+    }
+
+    void close() {
+        closed = true;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Best fuzzy matches of query on file names, best first. Names are
+     * scored in place through a reused view of the name array.
+     */
+    synchronized List<Path> search(String query, int limit) {
+        int[] best = new int[limit];
+        int[] bestScores = new int[limit];
+        int found = 0;
+        long queryMask = maskOf(query, 0, query.length());
+        NameView name = new NameView();
+        for (int file = 0; file < fileCount; file++) {
+            // Most names lack one of the query's characters and are skipped
+            // here without being scored
+            if ((nameMasks[file] & queryMask) != queryMask || fileDirectories[file] < 0) {
+                continue;
+            }
+            name.set(nameStarts[file], nameEnds[file]);
+            int score = QuickSwitcher.score(name, query);
+            if (score < 0 || found == limit && score <= bestScores[limit - 1]) {
+                continue;
+            }
+            int position = Math.min(found, limit - 1);
+            while (position > 0 && bestScores[position - 1] < score) {
+                best[position] = best[position - 1];
+                bestScores[position] = bestScores[position - 1];
+                position--;
+            }
+            best[position] = file;
+            bestScores[position] = score;
+            found = Math.min(found + 1, limit);
+        }
+        List<Path> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int file = best[i];
+            result.add(root.resolve(directories.get(fileDirectories[file]))
+                    .resolve(new String(names, nameStarts[file], nameEnds[file] - nameStarts[file])));
+        }
+        return result;
+    }
+
+    // Hidden folders such as .git are left out
+    private void crawl(Path start) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (closed) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    addDirectory(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isDirectory()) {
+                        addFile(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost; only this directory is read again
+                        removeDirectory(dir);
+                        crawl(dir);
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        if (Files.isDirectory(path)) {
+                            crawl(path);
+                        } else {
+                            addFile(path);
+                        }
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        if (!removeFile(path)) {
+                            removeDirectory(path);
+                        }
+                    }
+                }
+                key.reset();
+                directoryChanged.accept(dir);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed along with the workspace
+        }
+    }
+
+    private void addDirectory(Path dir) {
+        Path relative = root.relativize(dir);
+        synchronized (this) {
+            if (directoryIds.containsKey(relative)) {
+                return;
+            }
+            int id = directories.size();
+            directories.add(relative);
+            directoryIds.put(relative, id);
+            if (id == firstFile.length) {
+                firstFile = Arrays.copyOf(firstFile, id * 2);
+            }
+            firstFile[id] = -1;
+        }
+        if (watchService != null) {
+            try {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException e) {
+                // Out of watches; this directory is indexed but not kept up to date
+            }
+        }
+    }
+
+    private synchronized void addFile(Path file) {
+        Integer dir = directoryIds.get(root.relativize(file.getParent()));
+        if (dir == null || findFile(dir, file.getFileName().toString()) >= 0) {
+            return;
+        }
+        String name = file.getFileName().toString();
+        if (namesLength + name.length() > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length()));
+        }
+        if (fileCount == nameStarts.length) {
+            int capacity = fileCount * 2;
+            nameMasks = Arrays.copyOf(nameMasks, capacity);
+            nameStarts = Arrays.copyOf(nameStarts, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+            fileDirectories = Arrays.copyOf(fileDirectories, capacity);
+            nextFiles = Arrays.copyOf(nextFiles, capacity);
+        }
+        name.getChars(0, name.length(), names, namesLength);
+        nameMasks[fileCount] = maskOf(name, 0, name.length());
+        nameStarts[fileCount] = namesLength;
+        nameEnds[fileCount] = namesLength + name.length();
+        namesLength += name.length();
+        fileDirectories[fileCount] = dir;
+        nextFiles[fileCount] = firstFile[dir];
+        firstFile[dir] = fileCount;
+        fileCount++;
+    }
+
+    private synchronized boolean removeFile(Path file) {
+        Integer dir = directoryIds.get(root.relativize(file.getParent()));
+        if (dir == null) {
+            return false;
+        }
+        String name = file.getFileName().toString();
+        int previous = -1;
+        for (int id = firstFile[dir]; id >= 0; previous = id, id = nextFiles[id]) {
+            if (nameEquals(id, name)) {
+                if (previous < 0) {
+                    firstFile[dir] = nextFiles[id];
+                } else {
+                    nextFiles[previous] = nextFiles[id];
+                }
+                fileDirectories[id] = -1;
+                deletedCount++;
+                compactIfSparse();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Drops a directory and everything under it
+    private synchronized void removeDirectory(Path dir) {
+        Path relative = root.relativize(dir);
+        for (int id = 0; id < directories.size(); id++) {
+            Path path = directories.get(id);
+            if (path == null || !path.startsWith(relative)) {
+                continue;
+            }
+            for (int file = firstFile[id]; file >= 0; file = nextFiles[file]) {
+                fileDirectories[file] = -1;
+                deletedCount++;
+            }
+            firstFile[id] = -1;
+            // The root stays, emptied, when it is the one read again
+            if (id != 0) {
+                directories.set(id, null);
+                directoryIds.remove(path);
+            }
+        }
+        compactIfSparse();
+    }
+
+    // One bit per letter, ignoring case, and per digit; all other
+    // characters share the last bit
+    private static long maskOf(CharSequence text, int start, int end) {
+        long mask = 0;
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c >= 'a' && c <= 'z') {
+                mask |= 1L << (c - 'a');
+            } else if (c >= '0' && c <= '9') {
+                mask |= 1L << (26 + c - '0');
+            } else if (!Character.isWhitespace(c)) {
+                mask |= 1L << 63;
+            }
+        }
+        return mask;
+    }
+
+    private int findFile(int dir, String name) {
+        for (int id = firstFile[dir]; id >= 0; id = nextFiles[id]) {
+            if (nameEquals(id, name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int file, String name) {
+        int start = nameStarts[file];
+        if (nameEnds[file] - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (names[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Once most entries are deleted ones, the live ones are copied down
+    private void compactIfSparse() {
+        if (deletedCount < 1024 || deletedCount * 2 < fileCount) {
+            return;
+        }
+        char[] newNames = new char[Math.max(1 << 16, namesLength)];
+        int newLength = 0;
+        int live = 0;
+        Arrays.fill(firstFile, -1);
+        for (int file = 0; file < fileCount; file++) {
+            int dir = fileDirectories[file];
+            if (dir < 0) {
+                continue;
+            }
+            int length = nameEnds[file] - nameStarts[file];
+            System.arraycopy(names, nameStarts[file], newNames, newLength, length);
+            nameMasks[live] = nameMasks[file];
+            nameStarts[live] = newLength;
+            nameEnds[live] = newLength + length;
+            newLength += length;
+            fileDirectories[live] = dir;
+            nextFiles[live] = firstFile[dir];
+            firstFile[dir] = live;
+            live++;
+        }
+        names = newNames;
+        namesLength = newLength;
+        fileCount = live;
+        deletedCount = 0;
+    }
+
+    // A file name inside the name array, without copying it out
+    private final class NameView implements CharSequence {
+
+        private int start;
+        private int end;
+
+        void set(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return names[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(names, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(names, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Folded regions of a document. Folded text is taken out of the text area
+ * and replaced by a single placeholder character, so it is not laid out.
+ */
+package tabbedtexteditor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+final class FoldModel {
+
+    static final char PLACEHOLDER = '\u22EF';
+    private static final int MAX_HISTORY = 100;
+
+    static final class Fold {
+
+        int offset;
+        final String hidden;
+        // Styles of the hidden text, which leave the text area with it
+        final StyleRuns styles;
+        final List<Fold> children;
+
+        Fold(int offset, String hidden, StyleRuns styles, List<Fold> children) {
+            this.offset = offset;
+            this.hidden = hidden;
+            this.styles = styles;
+            this.children = children;
+        }
+    }
+
+    // A text change made by the fold model and the folds on either side of
+    // it, or a run of typing in between (with no text kept). A layout change
+    // folds or unfolds; the document's content stays the same. The styles
+    // are put back over the text when the change is made, undone or redone;
+    // without styles after, the text takes them as any insert would.
+    private static final class Change {
+
+        final int start;
+        final String before;
+        final String after;
+        final List<Fold> foldsBefore;
+        final List<Fold> foldsAfter;
+        final StyleRuns stylesBefore;
+        final StyleRuns stylesAfter;
+        final boolean layout;
+
+        Change(int start, String before, String after, List<Fold> foldsBefore, List<Fold> foldsAfter,
+                StyleRuns stylesBefore, StyleRuns stylesAfter, boolean layout) {
+            this.start = start;
+            this.before = before;
+            this.after = after;
+            this.foldsBefore = foldsBefore;
+            this.foldsAfter = foldsAfter;
+            this.stylesBefore = stylesBefore;
+            this.stylesAfter = stylesAfter;
+            this.layout = layout;
+        }
+
+        boolean isTyping() {
+            return before == null;
+        }
+    }
+
+    private final DocumentView view;
+    // Top-level folds sorted by placeholder offset; nested folds live in
+    // their parent with offsets relative to the parent's hidden text
+    private final List<Fold> folds = new ArrayList<>();
+    // Mirrors the text area's undo history so undo and redo can bring back
+    // the folds that went with the text; entries before the cursor are
+    // applied, the ones after it were undone
+    private final List<Change> history = new ArrayList<>();
+    private int historyCursor;
+    private int typingEnd = -1;
+    // Whether the change being made, and the edit last seen, only fold or
+    // unfold
+    private boolean replacingLayout;
+    private boolean layoutEdit;
+    private boolean historyTrimmed;
+
+    FoldModel(DocumentView view) {
+        this.view = view;
+    }
+
+    // Whether a change replacing [start, end) would remove a placeholder
+    boolean touches(int start, int end) {
+        int index = indexAtOrAfter(start);
+        return index < folds.size() && folds.get(index).offset < end;
+    }
+
+    String expand(String text) {
+        if (folds.isEmpty()) {
+            return text;
+        }
+        StringBuilder expanded = new StringBuilder(text.length() * 2);
+        appendExpanded(expanded, text, 0, text.length(), folds);
+        return expanded.toString();
+    }
+
+    // Styles matching expand(text) for styles matching text
+    StyleRuns expandStyles(StyleRuns styles) {
+        if (folds.isEmpty()) {
+            return styles;
+        }
+        StyleRuns expanded = new StyleRuns();
+        appendExpandedStyles(expanded, styles, 0, styles.length(), folds);
+        return expanded;
+    }
+
+    // Placeholder offset and length of the text it stands for, for each
+    // top-level fold
+    List<int[]> expansions() {
+        List<int[]> expansions = new ArrayList<>(folds.size());
+        for (Fold fold : folds) {
+            expansions.add(new int[] {fold.offset, expandedLength(fold)});
+        }
+        return expansions;
+    }
+
+    private static int expandedLength(Fold fold) {
+        int length = fold.hidden.length();
+        for (Fold child : fold.children) {
+            length += expandedLength(child) - 1;
+        }
+        return length;
+    }
+
+    // Folds the given sorted, non-overlapping ranges with one text change
+    void fold(List<int[]> ranges) {
+        String text = view.getTextArea().getText();
+        StyleRuns styles = view.getStyleRuns();
+        // Folding a lone placeholder again would not change the text
+        ranges = new ArrayList<>(ranges);
+        ranges.removeIf(range -> range[1] - range[0] == 1 && text.charAt(range[0]) == PLACEHOLDER);
+        if (ranges.isEmpty()) {
+            return;
+        }
+        List<Fold> before = copyOf(folds);
+        int spanStart = ranges.get(0)[0];
+        int spanEnd = ranges.get(ranges.size() - 1)[1];
+        StringBuilder replacement = new StringBuilder();
+        StyleRuns replacementStyles = new StyleRuns();
+        List<Fold> result = new ArrayList<>();
+
+        int position = spanStart;
+        int removed = 0;
+        Iterator<Fold> existing = folds.iterator();
+        Fold next = existing.hasNext() ? existing.next() : null;
+        for (int[] range : ranges) {
+            // Folds before this range keep their place, shifted left
+            while (next != null && next.offset < range[0]) {
+                next.offset -= removed;
+                result.add(next);
+                next = existing.hasNext() ? existing.next() : null;
+            }
+            List<Fold> children = new ArrayList<>();
+            while (next != null && next.offset < range[1]) {
+                next.offset -= range[0];
+                children.add(next);
+                next = existing.hasNext() ? existing.next() : null;
+            }
+            replacement.append(text, position, range[0]).append(PLACEHOLDER);
+            replacementStyles.append(styles, position, range[0]);
+            replacementStyles.append(1, styles.styleAt(range[0]));
+            result.add(new Fold(range[0] - removed, text.substring(range[0], range[1]),
+                    styles.slice(range[0], range[1]), children));
+            removed += range[1] - range[0] - 1;
+            position = range[1];
+        }
+        while (next != null) {
+            next.offset -= removed;
+            result.add(next);
+            next = existing.hasNext() ? existing.next() : null;
+        }
+
+        folds.clear();
+        folds.addAll(result);
+        replace(spanStart, spanEnd, replacement.toString(), replacementStyles, before, true);
+    }
+
+    void unfold(Fold fold) {
+        int index = folds.indexOf(fold);
+        if (index < 0) {
+            return;
+        }
+        List<Fold> before = copyOf(folds);
+        folds.remove(index);
+        int delta = fold.hidden.length() - 1;
+        for (int i = index; i < folds.size(); i++) {
+            folds.get(i).offset += delta;
+        }
+        for (Fold child : fold.children) {
+            child.offset += fold.offset;
+        }
+        folds.addAll(index, fold.children);
+        replace(fold.offset, fold.offset + 1, fold.hidden, fold.styles, before, true);
+    }
+
+    // Unfolds the top-level folds in [start, end); nested folds stay folded
+    void unfoldRange(int start, int end) {
+        int index = indexAtOrAfter(start);
+        while (index < folds.size() && folds.get(index).offset < end) {
+            Fold fold = folds.get(index);
+            end += fold.hidden.length() - 1;
+            unfold(fold);
+            index += fold.children.size();
+        }
+    }
+
+    void unfoldAll() {
+        if (folds.isEmpty()) {
+            return;
+        }
+        String text = view.getTextArea().getText();
+        List<Fold> before = copyOf(folds);
+        int spanStart = folds.get(0).offset;
+        int spanEnd = folds.get(folds.size() - 1).offset + 1;
+        StringBuilder expanded = new StringBuilder();
+        appendExpanded(expanded, text, spanStart, spanEnd, folds);
+        StyleRuns expandedStyles = new StyleRuns();
+        appendExpandedStyles(expandedStyles, view.getStyleRuns(), spanStart, spanEnd, folds);
+        folds.clear();
+        replace(spanStart, spanEnd, expanded.toString(), expandedStyles, before, true);
+    }
+
+    // Replaces the whole text, dropping every fold; undo brings them back
+    void replaceAll(String text) {
+        List<Fold> before = copyOf(folds);
+        folds.clear();
+        replace(0, view.getTextArea().getLength(), text, null, before, false);
+    }
+
+    private void replace(int start, int end, String text, StyleRuns styles, List<Fold> before, boolean layout) {
+        addToHistory(new Change(start, view.getTextArea().getText(start, end), text, before, copyOf(folds),
+                view.getStyleRuns().slice(start, end), styles, layout));
+        typingEnd = -1;
+        replacingLayout = layout;
+        view.replaceInternal(start, end, text);
+        if (styles != null) {
+            view.getStyleRuns().overwrite(start, styles);
+        }
+    }
+
+    // Whether the edit just made only folded or unfolded text, or undid or
+    // redid that; listeners that follow the content pass over such edits
+    boolean isLayoutEdit() {
+        return layoutEdit;
+    }
+
+    // Whether the text area's next undo or redo would fold or unfold
+    // rather than change the content
+    boolean undoesLayout() {
+        return historyCursor > 0 && history.get(historyCursor - 1).layout;
+    }
+
+    // Whether there is a change to the content to undo, past any folding;
+    // changes older than the kept history may be
+    boolean hasContentToUndo() {
+        for (int i = historyCursor - 1; i >= 0; i--) {
+            if (!history.get(i).layout) {
+                return true;
+            }
+        }
+        return historyTrimmed;
+    }
+
+    boolean redoesLayout() {
+        return historyCursor < history.size() && history.get(historyCursor).layout;
+    }
+
+    private void addToHistory(Change change) {
+        history.subList(historyCursor, history.size()).clear();
+        history.add(change);
+        if (history.size() > MAX_HISTORY) {
+            history.remove(0);
+            historyTrimmed = true;
+        }
+        historyCursor = history.size();
+    }
+
+    /*
+     * Typing never touches a placeholder, so it only shifts offsets. Undo and
+     * redo bypass the guard; since they revert changes in order, undoing one
+     * of ours restores the text exactly as it was before it, and the folds
+     * of that moment come back with it.
+     */
+    void edited(DocumentView.Edit edit) {
+        if (view.isInternalEdit()) {
+            layoutEdit = replacingLayout;
+            return;
+        }
+        layoutEdit = false;
+        if (edit.source == DocumentView.Source.TYPED) {
+            recordTyping(edit);
+        } else if (edit.source == DocumentView.Source.UNDO && undoHistory(edit)
+                || edit.source == DocumentView.Source.REDO && redoHistory(edit)) {
+            return;
+        }
+        int removedEnd = edit.start + edit.removedLength;
+        int delta = edit.insertedLength - edit.removedLength;
+        int index = indexAtOrAfter(edit.start);
+        // Folds whose placeholder was replaced some other way are gone
+        while (index < folds.size() && folds.get(index).offset < removedEnd) {
+            folds.remove(index);
+        }
+        for (int i = index; i < folds.size(); i++) {
+            folds.get(i).offset += delta;
+        }
+    }
+
+    // The text area merges contiguous typing into one undo step
+    private void recordTyping(DocumentView.Edit edit) {
+        boolean contiguous = edit.start == typingEnd || edit.start + edit.removedLength == typingEnd;
+        if (contiguous && historyCursor > 0 && history.get(historyCursor - 1).isTyping()) {
+            history.subList(historyCursor, history.size()).clear();
+        } else {
+            addToHistory(new Change(edit.start, null, null, null, null, null, null, false));
+        }
+        typingEnd = edit.start + edit.insertedLength;
+    }
+
+    // Undoing typing only shifts folds; undoing one of our changes is taken
+    // only when the text matches, anything else leaves the history alone
+    private boolean undoHistory(DocumentView.Edit edit) {
+        typingEnd = -1;
+        if (historyCursor == 0) {
+            return false;
+        }
+        Change change = history.get(historyCursor - 1);
+        if (change.isTyping()) {
+            historyCursor--;
+            return false;
+        }
+        if (!reverts(edit, change.start, change.after, change.before)) {
+            return false;
+        }
+        restore(change.foldsBefore);
+        view.getStyleRuns().overwrite(change.start, change.stylesBefore);
+        layoutEdit = change.layout;
+        historyCursor--;
+        return true;
+    }
+
+    private boolean redoHistory(DocumentView.Edit edit) {
+        typingEnd = -1;
+        if (historyCursor == history.size()) {
+            return false;
+        }
+        Change change = history.get(historyCursor);
+        if (change.isTyping()) {
+            historyCursor++;
+            return false;
+        }
+        if (!reverts(edit, change.start, change.before, change.after)) {
+            return false;
+        }
+        restore(change.foldsAfter);
+        if (change.stylesAfter != null) {
+            view.getStyleRuns().overwrite(change.start, change.stylesAfter);
+        }
+        layoutEdit = change.layout;
+        historyCursor++;
+        return true;
+    }
+
+    // Whether the edit turned `from` at start into `to` and left the rest of
+    // the text alone. The edit's common prefix and suffix cover most of that;
+    // only what a diff could have shifted within a run of equal characters
+    // is compared again.
+    private static boolean reverts(DocumentView.Edit edit, int start, String from, String to) {
+        String oldText = edit.oldText;
+        String newText = edit.newText;
+        int oldTail = start + from.length();
+        int newTail = start + to.length();
+        int tailLength = oldText.length() - oldTail;
+        if (tailLength < 0 || newText.length() - newTail != tailLength
+                || !oldText.startsWith(from, start) || !newText.startsWith(to, start)) {
+            return false;
+        }
+        int commonSuffix = oldText.length() - edit.start - edit.removedLength;
+        return (start <= edit.start || oldText.regionMatches(edit.start, newText, edit.start, start - edit.start))
+                && (tailLength <= commonSuffix
+                        || oldText.regionMatches(oldTail, newText, newTail, tailLength - commonSuffix));
+    }
+
+    private void restore(List<Fold> snapshot) {
+        folds.clear();
+        folds.addAll(copyOf(snapshot));
+    }
+
+    private static List<Fold> copyOf(List<Fold> list) {
+        List<Fold> copy = new ArrayList<>(list.size());
+        for (Fold fold : list) {
+            copy.add(new Fold(fold.offset, fold.hidden, fold.styles, copyOf(fold.children)));
+        }
+        return copy;
+    }
+
+    private int indexAtOrAfter(int offset) {
+        int low = 0;
+        int high = folds.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (folds.get(mid).offset >= offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static void appendExpandedStyles(StyleRuns out, StyleRuns styles, int from, int to, List<Fold> folds) {
+        int position = from;
+        for (Fold fold : folds) {
+            if (fold.offset < from) {
+                continue;
+            }
+            if (fold.offset >= to) {
+                break;
+            }
+            out.append(styles, position, fold.offset);
+            appendExpandedStyles(out, fold.styles, 0, fold.hidden.length(), fold.children);
+            position = fold.offset + 1;
+        }
+        out.append(styles, position, to);
+    }
+
+    private static void appendExpanded(StringBuilder out, String text, int from, int to, List<Fold> folds) {
+        int position = from;
+        for (Fold fold : folds) {
+            if (fold.offset < from) {
+                continue;
+            }
+            if (fold.offset >= to) {
+                break;
+            }
+            out.append(text, position, fold.offset);
+            appendExpanded(out, fold.hidden, 0, fold.hidden.length(), fold.children);
+            position = fold.offset + 1;
+        }
+        out.append(text, position, to);
+    }
+}
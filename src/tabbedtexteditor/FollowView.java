@@ -0,0 +1,176 @@
+/*
+ * Tab content for a followed file. The last MAX_LINES lines read are kept
+ * in a ring buffer, so memory stays bounded however long the file is
+ * followed; the list shows those that match the filter, and only its
+ * visible rows are laid out.
+ */
+package tabbedtexteditor;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToolBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.text.Font;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+class FollowView extends BorderPane {
+
+    private static final int MAX_LINES = 100_000;
+    private static final int MAX_SHOWN_CHARS = 1000;
+    private static final String INVALID_FILTER_STYLE = "-fx-border-color: #e05050;";
+
+    // Oldest line at ringStart; matched says whether each is in shown
+    private final String[] ring = new String[MAX_LINES];
+    private final boolean[] matched = new boolean[MAX_LINES];
+    private int ringStart;
+    private int ringCount;
+
+    private final ObservableList<String> shown = FXCollections.observableArrayList();
+    private final ListView<String> lines = new ListView<>(shown);
+    private final TextField filterField = new TextField();
+    private final CheckBox scrollToEnd = new CheckBox("Scroll to End");
+    private final Label status = new Label();
+    private final LogFollower follower;
+    private Pattern filter;
+    private long totalLines;
+
+    FollowView(Path file) {
+        lines.setCellFactory(list -> new LineCell());
+        filterField.setPromptText("Show lines matching (regex)");
+        filterField.setPrefWidth(260);
+        filterField.textProperty().addListener(o -> setFilter(filterField.getText()));
+        scrollToEnd.setSelected(true);
+        scrollToEnd.setOnAction(e -> {
+            if (scrollToEnd.isSelected()) {
+                showEnd();
+            }
+        });
+        setTop(new ToolBar(new Label("Filter:"), filterField, scrollToEnd, status));
+        setCenter(lines);
+        follower = new LogFollower(file, MAX_LINES, this::append);
+        updateStatus();
+    }
+
+    Path getFile() {
+        return follower.getFile();
+    }
+
+    void close() {
+        follower.close();
+    }
+
+    private void append(List<String> batch) {
+        totalLines += batch.size();
+        // More than the ring holds would only push each other out
+        if (batch.size() > MAX_LINES) {
+            batch = batch.subList(batch.size() - MAX_LINES, batch.size());
+        }
+        int evictedShown = 0;
+        List<String> added = new ArrayList<>();
+        for (String line : batch) {
+            if (ringCount == MAX_LINES) {
+                if (matched[ringStart]) {
+                    evictedShown++;
+                }
+                ring[ringStart] = null;
+                ringStart = (ringStart + 1) % MAX_LINES;
+                ringCount--;
+            }
+            int slot = (ringStart + ringCount) % MAX_LINES;
+            ring[slot] = line;
+            matched[slot] = matches(line);
+            ringCount++;
+            if (matched[slot]) {
+                added.add(line);
+            }
+        }
+        // The evicted lines are the oldest and so the first shown
+        if (evictedShown > 0) {
+            shown.remove(0, evictedShown);
+        }
+        shown.addAll(added);
+        if (scrollToEnd.isSelected()) {
+            showEnd();
+        }
+        updateStatus();
+    }
+
+    private void setFilter(String text) {
+        Pattern pattern = null;
+        if (text != null && !text.isEmpty()) {
+            try {
+                pattern = Pattern.compile(text, Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException e) {
+                // Keep the last valid filter while the pattern is typed
+                filterField.setStyle(INVALID_FILTER_STYLE);
+                return;
+            }
+        }
+        filterField.setStyle("");
+        filter = pattern;
+        List<String> matching = new ArrayList<>();
+        for (int i = 0; i < ringCount; i++) {
+            int slot = (ringStart + i) % MAX_LINES;
+            matched[slot] = matches(ring[slot]);
+            if (matched[slot]) {
+                matching.add(ring[slot]);
+            }
+        }
+        shown.setAll(matching);
+        if (scrollToEnd.isSelected()) {
+            showEnd();
+        }
+        updateStatus();
+    }
+
+    // Truncation and rotation markers, the marker strings themselves rather
+    // than log lines that read the same, are shown whatever the filter
+    private boolean matches(String line) {
+        return filter == null || line == LogFollower.TRUNCATED || line == LogFollower.ROTATED
+                || filter.matcher(line).find();
+    }
+
+    private void showEnd() {
+        if (!shown.isEmpty()) {
+            lines.scrollTo(shown.size() - 1);
+        }
+    }
+
+    private void updateStatus() {
+        String text = totalLines + " lines read";
+        if (totalLines > ringCount) {
+            text += ", last " + ringCount + " kept";
+        }
+        if (filter != null) {
+            text += ", " + shown.size() + " matching";
+        }
+        status.setText(text);
+    }
+
+    private static final class LineCell extends ListCell<String> {
+
+        LineCell() {
+            setFont(Font.font("Monospaced", 12));
+        }
+
+        @Override
+        protected void updateItem(String line, boolean empty) {
+            super.updateItem(line, empty);
+            if (empty || line == null) {
+                setText(null);
+                return;
+            }
+            String content = line.length() > MAX_SHOWN_CHARS ? line.substring(0, MAX_SHOWN_CHARS) : line;
+            setText(content.replace("\t", "    "));
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Tab content for a binary file: offset, hex and character columns drawn
+ * on a canvas for the visible rows only, over a BinaryFile's mapped pages.
+ * Typing hex digits, or characters in the character column, replaces the
+ * byte at the caret; the file never changes length.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToolBar;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+class HexView extends BorderPane {
+
+    private static final int BYTES_PER_ROW = 16;
+    private static final double PADDING = 6;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final Pattern HEX_BYTES = Pattern.compile("(\\s*[0-9a-fA-F]{2})+\\s*");
+    private static final Color OFFSET_COLOR = Color.GRAY;
+    private static final Color PATCHED_COLOR = Color.rgb(230, 120, 0);
+    private static final Color CARET_COLOR = Color.rgb(80, 140, 255, 0.45);
+    private static final Color MATCH_COLOR = Color.rgb(255, 200, 0, 0.45);
+    private static final String INVALID_FIELD_STYLE = "-fx-border-color: #e05050;";
+
+    private static final ExecutorService SEARCHER =
+            Workers.newSingleThreadExecutor("hex-search", Thread.NORM_PRIORITY);
+
+    private final BinaryFile file;
+    private final Pane rowsPane = new Pane() {
+        @Override
+        protected void layoutChildren() {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            updateScrollBar();
+            schedulePaint();
+        }
+    };
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar scrollBar = new ScrollBar();
+    private final TextField offsetField = new TextField();
+    private final TextField findField = new TextField();
+    // Whether the find field holds hex bytes rather than text
+    private final CheckBox hexSearch = new CheckBox("Hex");
+    private final Label status = new Label();
+    private final Font font = Font.font("Monospaced", 13);
+    private final double charWidth;
+    private final double lineHeight;
+    private final double baselineOffset;
+    private final int offsetDigits;
+
+    private long topRow;
+    private long caret;
+    // Second hex digit of the caret's byte is next
+    private boolean lowNibble;
+    // Typing goes to the character column rather than the hex digits
+    private boolean typingCharacters;
+    private long matchStart = -1;
+    private int matchLength;
+    private volatile int searchVersion;
+    private boolean paintScheduled;
+    private boolean closed;
+
+    HexView(BinaryFile file) {
+        this.file = file;
+        Text probe = new Text("0");
+        probe.setFont(font);
+        charWidth = probe.getLayoutBounds().getWidth();
+        lineHeight = Math.max(1, probe.getLayoutBounds().getHeight());
+        baselineOffset = probe.getBaselineOffset();
+        offsetDigits = file.size() > 0xffffffffL ? 16 : 8;
+
+        rowsPane.getChildren().add(canvas);
+        rowsPane.setFocusTraversable(true);
+        rowsPane.setOnMousePressed(e -> {
+            rowsPane.requestFocus();
+            moveCaretTo(e.getX(), e.getY());
+        });
+        rowsPane.setOnScroll(e -> scrollTo(topRow - Math.round(e.getDeltaY() / lineHeight)));
+        rowsPane.addEventHandler(KeyEvent.KEY_PRESSED, this::keyPressed);
+        rowsPane.addEventHandler(KeyEvent.KEY_TYPED, this::keyTyped);
+
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setMin(0);
+        scrollBar.setUnitIncrement(1);
+        scrollBar.valueProperty().addListener(o -> {
+            long row = Math.round(scrollBar.getValue());
+            if (row != topRow) {
+                topRow = row;
+                schedulePaint();
+            }
+        });
+
+        offsetField.setPromptText("Offset (decimal or 0x...)");
+        offsetField.setOnAction(e -> goToOffset(offsetField.getText()));
+        findField.setPromptText("Text");
+        findField.setPrefWidth(220);
+        findField.setOnAction(e -> findNext());
+        findField.textProperty().addListener(o -> findField.setStyle(""));
+        hexSearch.setOnAction(e -> {
+            findField.setPromptText(hexSearch.isSelected() ? "Hex bytes, such as CA FE" : "Text");
+            findField.setStyle("");
+        });
+        Button findButton = new Button("Find Next");
+        findButton.setOnAction(e -> findNext());
+
+        setTop(new ToolBar(new Label("Go to:"), offsetField, new Label("Find:"), findField, hexSearch, findButton,
+                status));
+        setCenter(rowsPane);
+        setRight(scrollBar);
+        updateStatus();
+    }
+
+    boolean isModified() {
+        return file.isModified();
+    }
+
+    void save() throws IOException {
+        file.save();
+        updateStatus();
+        schedulePaint();
+    }
+
+    void close() {
+        closed = true;
+        searchVersion++;
+        file.close();
+    }
+
+    private long rowCount() {
+        return (file.size() + BYTES_PER_ROW - 1) / BYTES_PER_ROW;
+    }
+
+    private int visibleRows() {
+        return Math.max(1, (int) (rowsPane.getHeight() / lineHeight));
+    }
+
+    private void updateScrollBar() {
+        long maxTop = Math.max(0, rowCount() - visibleRows());
+        scrollBar.setMax(maxTop);
+        scrollBar.setVisibleAmount(Math.max(1, Math.min(visibleRows(), maxTop)));
+        scrollBar.setBlockIncrement(visibleRows());
+        scrollTo(topRow);
+    }
+
+    private void scrollTo(long row) {
+        long maxTop = Math.max(0, rowCount() - visibleRows());
+        topRow = Math.max(0, Math.min(row, maxTop));
+        scrollBar.setValue(topRow);
+        schedulePaint();
+    }
+
+    private void schedulePaint() {
+        if (!paintScheduled) {
+            paintScheduled = true;
+            Platform.runLater(this::paint);
+        }
+    }
+
+    private double hexX(int column) {
+        return PADDING + (offsetDigits + 2 + column * 3 + (column >= BYTES_PER_ROW / 2 ? 1 : 0)) * charWidth;
+    }
+
+    private double charsX(int column) {
+        return hexX(BYTES_PER_ROW) + (1 + column) * charWidth;
+    }
+
+    private void paint() {
+        paintScheduled = false;
+        if (closed) {
+            return;
+        }
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        g.setFont(font);
+        Paint textFill = status.getTextFill() != null ? status.getTextFill() : Color.BLACK;
+        char[] hex = new char[2];
+        try {
+            for (int line = 0; line <= visibleRows(); line++) {
+                long row = topRow + line;
+                long rowStart = row * BYTES_PER_ROW;
+                if (rowStart >= file.size()) {
+                    break;
+                }
+                double top = line * lineHeight;
+                double baseline = top + baselineOffset;
+                g.setFill(OFFSET_COLOR);
+                g.fillText(formatOffset(rowStart), PADDING, baseline);
+                for (int column = 0; column < BYTES_PER_ROW; column++) {
+                    long offset = rowStart + column;
+                    if (offset >= file.size()) {
+                        break;
+                    }
+                    int value = file.byteAt(offset);
+                    Color highlight = offset == caret ? CARET_COLOR
+                            : offset >= matchStart && offset < matchStart + matchLength ? MATCH_COLOR : null;
+                    if (highlight != null) {
+                        g.setFill(highlight);
+                        g.fillRect(hexX(column), top, 2 * charWidth, lineHeight);
+                        g.fillRect(charsX(column), top, charWidth, lineHeight);
+                    }
+                    g.setFill(file.isPatched(offset) ? PATCHED_COLOR : textFill);
+                    hex[0] = HEX_DIGITS[value >> 4];
+                    hex[1] = HEX_DIGITS[value & 0xf];
+                    g.fillText(new String(hex), hexX(column), baseline);
+                    g.fillText(String.valueOf(value >= 0x20 && value < 0x7f ? (char) value : '.'),
+                            charsX(column), baseline);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private String formatOffset(long offset) {
+        String digits = Long.toHexString(offset).toUpperCase();
+        StringBuilder text = new StringBuilder(offsetDigits);
+        for (int i = digits.length(); i < offsetDigits; i++) {
+            text.append('0');
+        }
+        return text.append(digits).toString();
+    }
+
+    private void moveCaretTo(double x, double y) {
+        long row = topRow + (long) (y / lineHeight);
+        int column;
+        if (x >= charsX(0) - charWidth / 2) {
+            typingCharacters = true;
+            column = (int) ((x - charsX(0)) / charWidth);
+        } else {
+            typingCharacters = false;
+            int cell = (int) ((x - hexX(0)) / charWidth);
+            if (cell >= BYTES_PER_ROW / 2 * 3) {
+                cell--;
+            }
+            column = cell / 3;
+        }
+        column = Math.max(0, Math.min(BYTES_PER_ROW - 1, column));
+        setCaret(row * BYTES_PER_ROW + column);
+    }
+
+    private void setCaret(long offset) {
+        if (file.size() == 0) {
+            return;
+        }
+        caret = Math.max(0, Math.min(file.size() - 1, offset));
+        lowNibble = false;
+        long row = caret / BYTES_PER_ROW;
+        if (row < topRow) {
+            scrollTo(row);
+        } else if (row >= topRow + visibleRows()) {
+            scrollTo(row - visibleRows() + 1);
+        }
+        updateStatus();
+        schedulePaint();
+    }
+
+    private void keyPressed(KeyEvent e) {
+        long page = (long) visibleRows() * BYTES_PER_ROW;
+        if (e.getCode() == KeyCode.LEFT) {
+            setCaret(caret - 1);
+        } else if (e.getCode() == KeyCode.RIGHT) {
+            setCaret(caret + 1);
+        } else if (e.getCode() == KeyCode.UP) {
+            setCaret(caret - BYTES_PER_ROW);
+        } else if (e.getCode() == KeyCode.DOWN) {
+            setCaret(caret + BYTES_PER_ROW);
+        } else if (e.getCode() == KeyCode.PAGE_UP) {
+            setCaret(caret - page);
+        } else if (e.getCode() == KeyCode.PAGE_DOWN) {
+            setCaret(caret + page);
+        } else if (e.getCode() == KeyCode.HOME) {
+            setCaret(e.isShortcutDown() ? 0 : caret - caret % BYTES_PER_ROW);
+        } else if (e.getCode() == KeyCode.END) {
+            setCaret(e.isShortcutDown() ? file.size() - 1 : caret - caret % BYTES_PER_ROW + BYTES_PER_ROW - 1);
+        } else if (e.getCode() == KeyCode.TAB) {
+            typingCharacters = !typingCharacters;
+            lowNibble = false;
+        } else if (e.getCode() == KeyCode.G && e.isShortcutDown()) {
+            offsetField.requestFocus();
+            offsetField.selectAll();
+        } else if (e.getCode() == KeyCode.F3) {
+            findNext();
+        } else {
+            return;
+        }
+        e.consume();
+    }
+
+    private void keyTyped(KeyEvent e) {
+        String typed = e.getCharacter();
+        if (typed == null || typed.length() != 1 || e.isShortcutDown() || file.size() == 0 || file.isReadOnly()) {
+            return;
+        }
+        char c = typed.charAt(0);
+        try {
+            if (typingCharacters) {
+                if (c < 0x20 || c > 0xff) {
+                    return;
+                }
+                file.setByte(caret, c);
+                setCaret(caret + 1);
+            } else {
+                int digit = Character.digit(c, 16);
+                if (digit < 0) {
+                    return;
+                }
+                int value = file.byteAt(caret);
+                if (!lowNibble) {
+                    file.setByte(caret, digit << 4 | value & 0xf);
+                    lowNibble = true;
+                    updateStatus();
+                    schedulePaint();
+                } else {
+                    file.setByte(caret, value & 0xf0 | digit);
+                    setCaret(caret + 1);
+                }
+            }
+            e.consume();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void goToOffset(String text) {
+        String value = text.trim().toLowerCase();
+        try {
+            long offset = value.startsWith("0x") ? Long.parseLong(value.substring(2), 16) : Long.parseLong(value);
+            if (offset < 0 || offset >= file.size()) {
+                throw new NumberFormatException();
+            }
+            offsetField.setStyle("");
+            setCaret(offset);
+            rowsPane.requestFocus();
+        } catch (NumberFormatException e) {
+            offsetField.setStyle(INVALID_FIELD_STYLE);
+        }
+    }
+
+    // Searches after the caret, then wraps around to the start
+    private void findNext() {
+        String text = findField.getText();
+        if (text == null || text.isEmpty() || file.size() == 0) {
+            return;
+        }
+        byte[] pattern = hexSearch.isSelected() ? parseHex(text) : text.getBytes(StandardCharsets.UTF_8);
+        if (pattern == null) {
+            findField.setStyle(INVALID_FIELD_STYLE);
+            return;
+        }
+        long from = matchStart == caret ? caret + 1 : caret;
+        NavigableMap<Long, Byte> patched = file.patchSnapshot();
+        int version = ++searchVersion;
+        status.setText("Searching...");
+        SEARCHER.execute(() -> {
+            long found;
+            try {
+                found = file.find(pattern, from, file.size(), patched, () -> version != searchVersion);
+                if (found < 0) {
+                    found = file.find(pattern, 0, from, patched, () -> version != searchVersion);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                found = -1;
+            }
+            long match = found;
+            Platform.runLater(() -> {
+                if (version != searchVersion) {
+                    return;
+                }
+                if (match < 0) {
+                    matchStart = -1;
+                    updateStatus();
+                    status.setText(status.getText() + ", not found");
+                } else {
+                    matchStart = match;
+                    matchLength = pattern.length;
+                    setCaret(match);
+                }
+                schedulePaint();
+            });
+        });
+    }
+
+    // Pairs of hex digits, optionally spaced; null for anything else
+    private static byte[] parseHex(String text) {
+        if (!HEX_BYTES.matcher(text).matches()) {
+            return null;
+        }
+        String digits = text.replaceAll("\\s", "");
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private void updateStatus() {
+        String text = file.size() + " bytes, offset 0x" + Long.toHexString(caret).toUpperCase();
+        if (file.isReadOnly()) {
+            text += ", read-only";
+        }
+        if (file.isModified()) {
+            text += ", " + file.patchCount() + (file.patchCount() == 1 ? " byte" : " bytes") + " changed";
+        }
+        status.setText(text);
+    }
+}
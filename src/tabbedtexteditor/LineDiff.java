@@ -0,0 +1,516 @@
+/*
+ * Line diff of two texts: lines are numbered so equal lines get equal ids,
+ * the common head and tail are stripped, and the rest is compared with
+ * Myers' linear-space algorithm, split at unique common lines when large
+ */
+package tabbedtexteditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+final class LineDiff {
+
+    // Middles at least this long are split at anchors and diffed in parallel
+    private static final int PARALLEL_THRESHOLD = 20000;
+    private static final int SEGMENT_LINES = 8192;
+
+    // Lines [startA, endA) of the first text were replaced by lines
+    // [startB, endB) of the second
+    static final class Hunk {
+
+        final int startA;
+        final int endA;
+        final int startB;
+        final int endB;
+
+        Hunk(int startA, int endA, int startB, int endB) {
+            this.startA = startA;
+            this.endA = endA;
+            this.startB = startB;
+            this.endB = endB;
+        }
+    }
+
+    final String textA;
+    final String textB;
+    final int[] linesA;
+    final int[] linesB;
+    final List<Hunk> hunks;
+
+    private LineDiff(String textA, String textB, int[] linesA, int[] linesB, List<Hunk> hunks) {
+        this.textA = textA;
+        this.textB = textB;
+        this.linesA = linesA;
+        this.linesB = linesB;
+        this.hunks = hunks;
+    }
+
+    int lineCountA() {
+        return linesA.length - 1;
+    }
+
+    int lineCountB() {
+        return linesB.length - 1;
+    }
+
+    // Line text without its terminator, cut off after maxLength chars
+    static String line(String text, int[] lines, int line, int maxLength) {
+        int end = lines[line + 1];
+        if (end > lines[line] && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > lines[line] && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return text.substring(lines[line], Math.min(end, lines[line] + maxLength));
+    }
+
+    static LineDiff compute(String textA, String textB) {
+        int[] linesA = lineStarts(textA);
+        int[] linesB = lineStarts(textB);
+        LineTable table = new LineTable(linesA.length + linesB.length);
+        int[] a = table.ids(textA, linesA);
+        int[] b = table.ids(textB, linesB);
+
+        boolean[] changedA = new boolean[a.length];
+        boolean[] changedB = new boolean[b.length];
+        int start = 0;
+        int endA = a.length;
+        int endB = b.length;
+        while (start < endA && start < endB && a[start] == b[start]) {
+            start++;
+        }
+        while (endA > start && endB > start && a[endA - 1] == b[endB - 1]) {
+            endA--;
+            endB--;
+        }
+
+        compareMiddle(a, b, changedA, changedB, start, endA, endB, table.size());
+        return new LineDiff(textA, textB, linesA, linesB, hunks(changedA, changedB));
+    }
+
+    /*
+     * Lines without a counterpart on the other side are changed whatever
+     * happens, so only the rest is diffed; that keeps rewritten stretches
+     * cheap without making the result any less minimal.
+     */
+    private static void compareMiddle(int[] a, int[] b, boolean[] changedA, boolean[] changedB,
+            int start, int endA, int endB, int idCount) {
+        int[] countA = new int[idCount];
+        int[] countB = new int[idCount];
+        for (int i = start; i < endA; i++) {
+            countA[a[i]]++;
+        }
+        for (int j = start; j < endB; j++) {
+            countB[b[j]]++;
+        }
+        int[] linesA = new int[endA - start];
+        int[] linesB = new int[endB - start];
+        int[] keptA = compact(a, start, endA, countB, changedA, linesA);
+        int[] keptB = compact(b, start, endB, countA, changedB, linesB);
+        boolean[] keptChangedA = new boolean[keptA.length];
+        boolean[] keptChangedB = new boolean[keptB.length];
+
+        if (keptA.length < PARALLEL_THRESHOLD || keptB.length < PARALLEL_THRESHOLD) {
+            new Myers(keptA, keptB, keptChangedA, keptChangedB, 0, keptA.length, 0, keptB.length)
+                    .compare(0, keptA.length, 0, keptB.length);
+        } else {
+            int[] cuts = anchors(keptA, keptB, countA, countB);
+            // Segments lie between consecutive anchors, which are unchanged
+            int segments = cuts.length / 2 + 1;
+            IntStream.range(0, segments).parallel().forEach(i -> {
+                int fromA = i == 0 ? 0 : cuts[2 * i - 2] + 1;
+                int fromB = i == 0 ? 0 : cuts[2 * i - 1] + 1;
+                int toA = i == segments - 1 ? keptA.length : cuts[2 * i];
+                int toB = i == segments - 1 ? keptB.length : cuts[2 * i + 1];
+                new Myers(keptA, keptB, keptChangedA, keptChangedB, fromA, toA, fromB, toB)
+                        .compare(fromA, toA, fromB, toB);
+            });
+        }
+        for (int i = 0; i < keptA.length; i++) {
+            changedA[linesA[i]] = keptChangedA[i];
+        }
+        for (int j = 0; j < keptB.length; j++) {
+            changedB[linesB[j]] = keptChangedB[j];
+        }
+    }
+
+    // Returns the ids in [from, to) that occur on the other side, storing
+    // their line numbers in lines and marking the others changed
+    private static int[] compact(int[] ids, int from, int to, int[] otherCounts, boolean[] changed, int[] lines) {
+        int[] kept = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (otherCounts[ids[i]] > 0) {
+                lines[count] = i;
+                kept[count++] = ids[i];
+            } else {
+                changed[i] = true;
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    // Offsets where each line starts, followed by the text length
+    private static int[] lineStarts(String text) {
+        int[] starts = new int[64];
+        int count = 1;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = i + 1;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count + 1);
+        }
+        starts[count++] = text.length();
+        return Arrays.copyOf(starts, count);
+    }
+
+    /*
+     * Lines that occur exactly once on both sides and appear in the same
+     * order (the longest increasing run of their positions) are certain
+     * matches. Every SEGMENT_LINES or so one of them is taken as a cut;
+     * returns the cuts as pairs of line numbers.
+     */
+    private static int[] anchors(int[] a, int[] b, int[] countA, int[] countB) {
+        int[] positionB = new int[countB.length];
+        for (int j = 0; j < b.length; j++) {
+            positionB[b[j]] = j;
+        }
+
+        int[] candidatesA = new int[Math.min(a.length, b.length)];
+        int[] candidatesB = new int[candidatesA.length];
+        int candidates = 0;
+        for (int i = 0; i < a.length && candidates < candidatesA.length; i++) {
+            int id = a[i];
+            if (countA[id] == 1 && countB[id] == 1) {
+                candidatesA[candidates] = i;
+                candidatesB[candidates++] = positionB[id];
+            }
+        }
+
+        // Patience sorting: tails[k] is the candidate ending the best run of
+        // length k + 1, previous[] links each candidate to its predecessor
+        int[] tails = new int[candidates];
+        int[] previous = new int[candidates];
+        int length = 0;
+        for (int c = 0; c < candidates; c++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (candidatesB[tails[mid]] < candidatesB[c]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[c] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = c;
+            if (low == length) {
+                length++;
+            }
+        }
+        int[] run = new int[length];
+        for (int c = length > 0 ? tails[length - 1] : -1, k = length - 1; c >= 0; c = previous[c], k--) {
+            run[k] = c;
+        }
+
+        int[] cuts = new int[2 * length];
+        int count = 0;
+        int lastA = 0;
+        for (int c : run) {
+            if (candidatesA[c] - lastA >= SEGMENT_LINES) {
+                cuts[count++] = candidatesA[c];
+                cuts[count++] = candidatesB[c];
+                lastA = candidatesA[c];
+            }
+        }
+        return Arrays.copyOf(cuts, count);
+    }
+
+    private static List<Hunk> hunks(boolean[] changedA, boolean[] changedB) {
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < changedA.length || j < changedB.length) {
+            if (i < changedA.length && changedA[i] || j < changedB.length && changedB[j]) {
+                int startA = i;
+                int startB = j;
+                while (i < changedA.length && changedA[i]) {
+                    i++;
+                }
+                while (j < changedB.length && changedB[j]) {
+                    j++;
+                }
+                hunks.add(new Hunk(startA, i, startB, j));
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return hunks;
+    }
+
+    /*
+     * Numbers lines by content so they compare as ints. Open addressing over
+     * line offsets avoids a substring per line; a trailing '\r' is ignored.
+     */
+    private static final class LineTable {
+
+        private String[] texts;
+        private int[] starts;
+        private int[] ends;
+        private int[] hashes;
+        private int[] slots;
+        private int size;
+
+        LineTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected) * 2 - 1) * 2;
+            slots = new int[capacity];
+            texts = new String[16];
+            starts = new int[16];
+            ends = new int[16];
+            hashes = new int[16];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] ids(String text, int[] lines) {
+            int[] ids = new int[lines.length - 1];
+            for (int line = 0; line < ids.length; line++) {
+                int start = lines[line];
+                int end = lines[line + 1];
+                if (end > start && text.charAt(end - 1) == '\n') {
+                    end--;
+                }
+                if (end > start && text.charAt(end - 1) == '\r') {
+                    end--;
+                }
+                ids[line] = intern(text, start, end);
+            }
+            return ids;
+        }
+
+        private int intern(String text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            hash ^= hash >>> 16;
+            int mask = slots.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int id = slots[slot] - 1;
+                if (id < 0) {
+                    return add(slot, text, start, end, hash);
+                }
+                if (hashes[id] == hash && ends[id] - starts[id] == end - start
+                        && text.regionMatches(start, texts[id], starts[id], end - start)) {
+                    return id;
+                }
+            }
+        }
+
+        private int add(int slot, String text, int start, int end, int hash) {
+            if (size == texts.length) {
+                int capacity = size * 2;
+                texts = Arrays.copyOf(texts, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+            }
+            texts[size] = text;
+            starts[size] = start;
+            ends[size] = end;
+            hashes[size] = hash;
+            slots[slot] = ++size;
+            return size - 1;
+        }
+    }
+
+    /*
+     * Myers' O(ND) diff in linear space: find the middle snake of the edit
+     * path, then recurse on both halves. Like GNU diff, it gives up on a
+     * minimal result when the search gets too expensive and splits at the
+     * furthest-reaching diagonal instead.
+     */
+    private static final class Myers {
+
+        private final int[] a;
+        private final int[] b;
+        private final boolean[] changedA;
+        private final boolean[] changedB;
+        private final int[] forward;
+        private final int[] backward;
+        private final int offset;
+        private final int tooExpensive;
+        private int splitA;
+        private int splitB;
+
+        Myers(int[] a, int[] b, boolean[] changedA, boolean[] changedB, int fromA, int toA, int fromB, int toB) {
+            this.a = a;
+            this.b = b;
+            this.changedA = changedA;
+            this.changedB = changedB;
+            int diagonals = (toA - fromA) + (toB - fromB) + 3;
+            forward = new int[diagonals];
+            backward = new int[diagonals];
+            offset = toB - fromA + 1;
+            int limit = 1;
+            for (int d = diagonals; d != 0; d >>= 2) {
+                limit <<= 1;
+            }
+            tooExpensive = Math.max(256, limit);
+        }
+
+        void compare(int fromA, int toA, int fromB, int toB) {
+            while (true) {
+                while (fromA < toA && fromB < toB && a[fromA] == b[fromB]) {
+                    fromA++;
+                    fromB++;
+                }
+                while (fromA < toA && fromB < toB && a[toA - 1] == b[toB - 1]) {
+                    toA--;
+                    toB--;
+                }
+                if (fromA == toA) {
+                    Arrays.fill(changedB, fromB, toB, true);
+                    return;
+                }
+                if (fromB == toB) {
+                    Arrays.fill(changedA, fromA, toA, true);
+                    return;
+                }
+                split(fromA, toA, fromB, toB);
+                int middleA = splitA;
+                int middleB = splitB;
+                compare(fromA, middleA, fromB, middleB);
+                fromA = middleA;
+                fromB = middleB;
+            }
+        }
+
+        // Sets splitA and splitB to a point on an optimal (or good) path;
+        // diagonal k holds the points where x - y == k
+        private void split(int fromA, int toA, int fromB, int toB) {
+            int minDiagonal = fromA - toB;
+            int maxDiagonal = toA - fromB;
+            int forwardMid = fromA - fromB;
+            int backwardMid = toA - toB;
+            int forwardMin = forwardMid;
+            int forwardMax = forwardMid;
+            int backwardMin = backwardMid;
+            int backwardMax = backwardMid;
+            boolean odd = ((forwardMid - backwardMid) & 1) != 0;
+            forward[forwardMid + offset] = fromA;
+            backward[backwardMid + offset] = toA;
+
+            for (int cost = 1; ; cost++) {
+                if (forwardMin > minDiagonal) {
+                    forward[--forwardMin - 1 + offset] = -1;
+                } else {
+                    forwardMin++;
+                }
+                if (forwardMax < maxDiagonal) {
+                    forward[++forwardMax + 1 + offset] = -1;
+                } else {
+                    forwardMax--;
+                }
+                for (int d = forwardMax; d >= forwardMin; d -= 2) {
+                    int low = forward[d - 1 + offset];
+                    int high = forward[d + 1 + offset];
+                    int x = low >= high ? low + 1 : high;
+                    int y = x - d;
+                    while (x < toA && y < toB && a[x] == b[y]) {
+                        x++;
+                        y++;
+                    }
+                    forward[d + offset] = x;
+                    if (odd && backwardMin <= d && d <= backwardMax && backward[d + offset] <= x) {
+                        splitA = x;
+                        splitB = y;
+                        return;
+                    }
+                }
+
+                if (backwardMin > minDiagonal) {
+                    backward[--backwardMin - 1 + offset] = Integer.MAX_VALUE;
+                } else {
+                    backwardMin++;
+                }
+                if (backwardMax < maxDiagonal) {
+                    backward[++backwardMax + 1 + offset] = Integer.MAX_VALUE;
+                } else {
+                    backwardMax--;
+                }
+                for (int d = backwardMax; d >= backwardMin; d -= 2) {
+                    int low = backward[d - 1 + offset];
+                    int high = backward[d + 1 + offset];
+                    int x = low < high ? low : high - 1;
+                    int y = x - d;
+                    while (x > fromA && y > fromB && a[x - 1] == b[y - 1]) {
+                        x--;
+                        y--;
+                    }
+                    backward[d + offset] = x;
+                    if (!odd && forwardMin <= d && d <= forwardMax && x <= forward[d + offset]) {
+                        splitA = x;
+                        splitB = y;
+                        return;
+                    }
+                }
+
+                if (cost >= tooExpensive) {
+                    splitHeuristically(fromA, toA, fromB, toB, forwardMin, forwardMax, backwardMin, backwardMax);
+                    return;
+                }
+            }
+        }
+
+        // Takes whichever search got further towards its end
+        private void splitHeuristically(int fromA, int toA, int fromB, int toB,
+                int forwardMin, int forwardMax, int backwardMin, int backwardMax) {
+            int forwardBest = -1;
+            int forwardBestX = fromA;
+            for (int d = forwardMax; d >= forwardMin; d -= 2) {
+                int x = Math.min(forward[d + offset], toA);
+                int y = x - d;
+                if (y > toB) {
+                    x = toB + d;
+                    y = toB;
+                }
+                if (x + y > forwardBest) {
+                    forwardBest = x + y;
+                    forwardBestX = x;
+                }
+            }
+            int backwardBest = Integer.MAX_VALUE;
+            int backwardBestX = toA;
+            for (int d = backwardMax; d >= backwardMin; d -= 2) {
+                int x = Math.max(fromA, backward[d + offset]);
+                int y = x - d;
+                if (y < fromB) {
+                    x = fromB + d;
+                    y = fromB;
+                }
+                if (x + y < backwardBest) {
+                    backwardBest = x + y;
+                    backwardBestX = x;
+                }
+            }
+            if (toA + toB - backwardBest < forwardBest - (fromA + fromB)) {
+                splitA = forwardBestX;
+                splitB = forwardBest - forwardBestX;
+            } else {
+                splitA = backwardBestX;
+                splitB = backwardBest - backwardBestX;
+            }
+        }
+    }
+}
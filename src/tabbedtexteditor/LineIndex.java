@@ -0,0 +1,101 @@
+/*
+ * Line start offsets of a document, kept up to date per edit
+ */
+package tabbedtexteditor;
+
+import java.util.Arrays;
+
+final class LineIndex {
+
+    private int[] starts = new int[64];
+    private int lineCount = 1;
+
+    LineIndex() {
+    }
+
+    LineIndex(CharSequence text) {
+        reset(text);
+    }
+
+    void reset(CharSequence text) {
+        lineCount = 1;
+        starts[0] = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            if (text.charAt(i) == '\n') {
+                append(i + 1);
+            }
+        }
+    }
+
+    /*
+     * Applies an edit that replaced removedLength chars at start with
+     * insertedLength chars; newText is the document after the edit.
+     * Only the line starts inside the edit are rescanned, the rest shift.
+     */
+    void applyEdit(int start, int removedLength, int insertedLength, CharSequence newText) {
+        int first = firstLineStartingAfter(start);
+        int last = firstLineStartingAfter(start + removedLength);
+        int delta = insertedLength - removedLength;
+
+        int added = 0;
+        for (int i = start, end = start + insertedLength; i < end; i++) {
+            if (newText.charAt(i) == '\n') {
+                added++;
+            }
+        }
+
+        int removed = last - first;
+        int tail = lineCount - last;
+        ensureCapacity(lineCount - removed + added);
+        System.arraycopy(starts, last, starts, first + added, tail);
+        for (int i = first + added, end = first + added + tail; i < end; i++) {
+            starts[i] += delta;
+        }
+
+        int line = first;
+        for (int i = start, end = start + insertedLength; i < end; i++) {
+            if (newText.charAt(i) == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        lineCount = lineCount - removed + added;
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    int lineStart(int line) {
+        return starts[line];
+    }
+
+    // End offset of the line, excluding its '\n'
+    int lineEnd(int line, int textLength) {
+        return line + 1 < lineCount ? starts[line + 1] - 1 : textLength;
+    }
+
+    int lineOfOffset(int offset) {
+        int index = Arrays.binarySearch(starts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    int[] copyStarts() {
+        return Arrays.copyOf(starts, lineCount);
+    }
+
+    private int firstLineStartingAfter(int offset) {
+        int index = Arrays.binarySearch(starts, 0, lineCount, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private void append(int start) {
+        ensureCapacity(lineCount + 1);
+        starts[lineCount++] = start;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(capacity, starts.length + (starts.length >> 1)));
+        }
+    }
+}
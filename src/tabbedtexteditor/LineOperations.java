@@ -0,0 +1,682 @@
+/*
+ * Sorting, deduplicating, filtering and reordering the lines of a
+ * document. Lines are never split into strings: each is a range of the
+ * text given by a LineIndex, and an operation rearranges an array of line
+ * numbers. The text is copied once, when the result is joined. Sorting is
+ * a stable merge sort whose halves are sorted in parallel.
+ */
+package tabbedtexteditor;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+final class LineOperations {
+
+    enum Order {
+        LEXICAL("Sort Lines"),
+        CASE_INSENSITIVE("Sort Lines, Ignoring Case"),
+        NUMERIC("Sort Lines Numerically"),
+        NATURAL("Sort Lines in Natural Order");
+
+        final String label;
+
+        Order(String label) {
+            this.label = label;
+        }
+    }
+
+    // Ranges shorter than this are sorted on the calling thread
+    private static final int SEQUENTIAL_THRESHOLD = 8192;
+    private static final int INSERTION_THRESHOLD = 32;
+    // A key with chars that do not fit its width; also the key of a line
+    // of eight U+00FF chars, which only costs that sort the wider keys
+    private static final long WIDE = Long.MAX_VALUE;
+    // Keys made for each line before equal ones are compared in the text
+    private static final int MAX_KEY_ROUNDS = 8;
+
+    private interface LineComparator {
+        int compare(int a, int b);
+    }
+
+    private final String text;
+    private final int[] starts;
+    private final int firstLine;
+    private final int lastLine;
+    private final BooleanSupplier cancelled;
+
+    /*
+     * Works on the lines overlapping [from, to], or with an empty range on
+     * the line holding it. A range ending at the start of a line leaves
+     * that line out, so a selection of whole lines, or a document ending
+     * with a newline, does not take in the empty line after it.
+     */
+    LineOperations(String text, int from, int to, BooleanSupplier cancelled) {
+        this.text = text;
+        this.cancelled = cancelled;
+        LineIndex index = new LineIndex(text);
+        starts = index.copyStarts();
+        firstLine = index.lineOfOffset(from);
+        int last = index.lineOfOffset(to);
+        if (to > from && last > firstLine && starts[last] == to) {
+            last--;
+        }
+        lastLine = last;
+    }
+
+    int lineCount() {
+        return lastLine - firstLine + 1;
+    }
+
+    // Start of the first line worked on
+    int rangeStart() {
+        return starts[firstLine];
+    }
+
+    // End of the last line worked on, before its '\n'
+    int rangeEnd() {
+        return end(lastLine);
+    }
+
+    private int end(int line) {
+        return line + 1 < starts.length ? starts[line + 1] - 1 : text.length();
+    }
+
+    private int[] lines() {
+        int[] lines = new int[lineCount()];
+        Arrays.setAll(lines, i -> firstLine + i);
+        return lines;
+    }
+
+    /*
+     * Each line gets two keys packing the first chars after the prefix
+     * every line shares, and keys are merged along with the line numbers,
+     * so the comparisons are between keys next to each other in memory.
+     * Lines left with equal keys are then keyed again on their next chars
+     * and sorted among themselves; only those still equal after that,
+     * mostly duplicates, are compared in the text.
+     */
+    int[] sorted(Order order) {
+        int[] lines = lines();
+        long[] keys = new long[lines.length];
+        if (order == Order.NUMERIC) {
+            // Equal numbers keep their order
+            Arrays.parallelSetAll(keys, i -> numberKey(leadingNumber(firstLine + i)));
+            ForkJoinPool.commonPool().invoke(new MergeSort(new Run(lines, keys, null, (a, b) -> 0), 0, lines.length));
+            return lines;
+        }
+        long[] nextKeys = new long[lines.length];
+        Run byKey = new Run(lines, keys, nextKeys, (a, b) -> 0);
+        int shared = order == Order.NATURAL ? sharedNaturalPrefix() : sharedPrefix(order == Order.CASE_INSENSITIVE);
+        int bits = 8;
+        Arrays.parallelSetAll(keys, i -> charKey(firstLine + i, shared, order, 8, 0));
+        Arrays.parallelSetAll(nextKeys, i -> charKey(firstLine + i, shared, order, 8, 1));
+        if (IntStream.range(0, lines.length).parallel().anyMatch(i -> keys[i] == WIDE || nextKeys[i] == WIDE)) {
+            bits = 16;
+            Arrays.parallelSetAll(keys, i -> charKey(firstLine + i, shared, order, 16, 0));
+            Arrays.parallelSetAll(nextKeys, i -> charKey(firstLine + i, shared, order, 16, 1));
+        }
+        ForkJoinPool.commonPool().invoke(new MergeSort(byKey, 0, lines.length));
+
+        Run byText = byKey.withTies(order == Order.NATURAL ? this::compareNaturally
+                : order == Order.CASE_INSENSITIVE ? this::compareIgnoringCase
+                : this::compare);
+        // Runs are found before any is keyed again, which changes the keys
+        // a neighbouring run's end would be looked for in
+        int[] runs = tiedRuns(byKey, 0, lines.length);
+        int[] ends = runEnds(byKey, runs, lines.length);
+        int keyBits = bits;
+        IntStream.range(0, runs.length).parallel().forEach(run -> {
+            if (!cancelled.getAsBoolean()) {
+                settle(byKey, byText, runs[run], ends[run], shared, order, keyBits, 2);
+            }
+        });
+        return lines;
+    }
+
+    // Starts of the runs of two or more lines with equal keys in [from, to)
+    private static int[] tiedRuns(Run run, int from, int to) {
+        return IntStream.range(from, to - 1)
+                .filter(i -> run.sameKeys(i, i + 1) && (i == from || !run.sameKeys(i - 1, i)))
+                .toArray();
+    }
+
+    private static int[] runEnds(Run run, int[] starts, int to) {
+        int[] ends = new int[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            int end = starts[i] + 1;
+            while (end < to && run.sameKeys(starts[i], end)) {
+                end++;
+            }
+            ends[i] = end;
+        }
+        return ends;
+    }
+
+    // Orders a run of lines whose keys so far are equal by their next keys
+    private void settle(Run byKey, Run byText, int from, int to, int offset, Order order, int bits, int round) {
+        long[] keys = byKey.keys;
+        long[] nextKeys = byKey.nextKeys;
+        if (round < MAX_KEY_ROUNDS) {
+            boolean ended = true;
+            boolean wide = false;
+            for (int i = from; i < to; i++) {
+                int line = byKey.lines[i];
+                keys[i] = charKey(line, offset, order, bits, round);
+                nextKeys[i] = charKey(line, offset, order, bits, round + 1);
+                ended &= keys[i] == Long.MIN_VALUE && nextKeys[i] == Long.MIN_VALUE;
+                wide |= keys[i] == WIDE || nextKeys[i] == WIDE;
+            }
+            if (!ended && !wide) {
+                sort(byKey, from, to);
+                int[] runs = tiedRuns(byKey, from, to);
+                int[] ends = runEnds(byKey, runs, to);
+                for (int run = 0; run < runs.length; run++) {
+                    settle(byKey, byText, runs[run], ends[run], offset, order, bits, round + 2);
+                }
+                return;
+            }
+        }
+        // Lines with nothing left to key on, or still equal after the last
+        // round, are compared in the text
+        Arrays.fill(keys, from, to, 0);
+        Arrays.fill(nextKeys, from, to, 0);
+        sort(byText, from, to);
+    }
+
+    // Length of the prefix all lines worked on start with
+    private int sharedPrefix(boolean ignoreCase) {
+        int first = starts[firstLine];
+        int firstLength = end(firstLine) - first;
+        return IntStream.rangeClosed(firstLine, lastLine).parallel().map(line -> {
+            int start = starts[line];
+            int length = Math.min(firstLength, end(line) - start);
+            int i = 0;
+            while (i < length && (ignoreCase
+                    ? compareIgnoringCase(text.charAt(first + i), text.charAt(start + i)) == 0
+                    : text.charAt(first + i) == text.charAt(start + i))) {
+                i++;
+            }
+            return i;
+        }).min().orElse(0);
+    }
+
+    // Natural order compares a number as a whole, and ignores case; a
+    // shared prefix ending in digits could end inside a number, so it is
+    // cut back to before them
+    private int sharedNaturalPrefix() {
+        int shared = sharedPrefix(true);
+        int first = starts[firstLine];
+        while (shared > 0 && isDigit(text.charAt(first + shared - 1))) {
+            shared--;
+        }
+        return shared;
+    }
+
+    /*
+     * Chars from offset into the line, eight bits each when they fit and
+     * sixteen otherwise, ordered as the comparison orders them; round says
+     * how many keys' worth of chars come before. A line that ends sooner is
+     * padded with zeros, so it sorts first. Lines in order have keys in
+     * order, and only equal keys need more. In natural order a run of digits
+     * becomes its length without leading zeros, then its digits; it is a
+     * digit itself, so it compares with other chars as any digit would.
+     */
+    private long charKey(int line, int offset, Order order, int bits, int round) {
+        int skip = round * (64 / bits);
+        int limit = skip + 64 / bits;
+        int slot = 0;
+        long key = 0;
+        int i = starts[line] + offset;
+        int end = end(line);
+        while (slot < limit && i < end) {
+            char c = text.charAt(i);
+            if (order == Order.NATURAL && isDigit(c)) {
+                while (i < end && text.charAt(i) == '0') {
+                    i++;
+                }
+                int digits = i;
+                while (digits < end && isDigit(text.charAt(digits))) {
+                    digits++;
+                }
+                // Nine or more digits are told apart in the text
+                int length = Math.min(digits - i, 9);
+                if (slot++ >= skip) {
+                    key = key << bits | '0' + length;
+                }
+                if (length == 9) {
+                    break;
+                }
+                while (slot < limit && i < digits) {
+                    char digit = text.charAt(i++);
+                    if (slot++ >= skip) {
+                        key = key << bits | digit;
+                    }
+                }
+                continue;
+            }
+            if (slot++ >= skip) {
+                int value = order == Order.LEXICAL ? c : Character.toLowerCase(Character.toUpperCase(c));
+                if (value >= 1 << bits) {
+                    return WIDE;
+                }
+                key = key << bits | value;
+            }
+            i++;
+        }
+        int filled = Math.max(slot - skip, 0);
+        if (filled > 0) {
+            key <<= bits * (limit - skip - filled);
+        }
+        // Unsigned order as signed longs
+        return key ^ Long.MIN_VALUE;
+    }
+
+    // Doubles in order as signed longs; NaN, for lines without a number,
+    // sorts last
+    private static long numberKey(double number) {
+        long bits = Double.doubleToLongBits(number);
+        return bits ^ (bits >> 63 & Long.MAX_VALUE);
+    }
+
+    // The first of each set of equal lines, in document order
+    int[] distinct() {
+        int[] lines = lines();
+        int[] hashes = new int[lines.length];
+        Arrays.parallelSetAll(hashes, i -> hash(lines[i]));
+        // Open addressing over positions in lines, plus one; zero is empty
+        int[] table = new int[Integer.highestOneBit(Math.max(lines.length * 3 / 2, 1)) << 1];
+        int mask = table.length - 1;
+        int count = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if ((i & 0xffff) == 0 && cancelled.getAsBoolean()) {
+                return lines;
+            }
+            int slot = hashes[i] & mask;
+            boolean seen = false;
+            while (table[slot] != 0) {
+                int other = table[slot] - 1;
+                // Positions kept are moved down in lines, so the line at
+                // a position is taken from where the range starts
+                if (hashes[other] == hashes[i] && compare(firstLine + other, firstLine + i) == 0) {
+                    seen = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!seen) {
+                table[slot] = i + 1;
+                lines[count++] = lines[i];
+            }
+        }
+        return Arrays.copyOf(lines, count);
+    }
+
+    // Lines in which the pattern is found, or with keep false the others;
+    // ^ and $ match at the line's start and end
+    int[] matching(Pattern pattern, boolean keep) {
+        return IntStream.rangeClosed(firstLine, lastLine).parallel()
+                .filter(line -> !cancelled.getAsBoolean()
+                        && pattern.matcher(text).region(starts[line], end(line)).find() == keep)
+                .toArray();
+    }
+
+    int[] reversed() {
+        int[] lines = lines();
+        for (int i = 0, j = lines.length - 1; i < j; i++, j--) {
+            int line = lines[i];
+            lines[i] = lines[j];
+            lines[j] = line;
+        }
+        return lines;
+    }
+
+    int[] shuffled() {
+        int[] lines = lines();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = lines.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int line = lines[i];
+            lines[i] = lines[j];
+            lines[j] = line;
+        }
+        return lines;
+    }
+
+    // The whole text, with the lines worked on replaced by these
+    String join(int[] lines) {
+        long length = text.length() - (rangeEnd() - rangeStart()) + Math.max(lines.length - 1, 0);
+        for (int line : lines) {
+            length += end(line) - starts[line];
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("The result is too large.");
+        }
+        StringBuilder joined = new StringBuilder((int) length);
+        // With every line removed, the '\n' that ended the last one, or
+        // at the end of the text the one before the first, goes too
+        int prefixEnd = rangeStart();
+        int rest = rangeEnd();
+        if (lines.length == 0) {
+            if (rest < text.length()) {
+                rest++;
+            } else if (prefixEnd > 0) {
+                prefixEnd--;
+            }
+        }
+        joined.append(text, 0, prefixEnd);
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                joined.append('\n');
+            }
+            joined.append(text, starts[lines[i]], end(lines[i]));
+        }
+        joined.append(text, rest, text.length());
+        return joined.toString();
+    }
+
+    private int compare(int a, int b) {
+        int i = starts[a];
+        int j = starts[b];
+        int endA = end(a);
+        int endB = end(b);
+        while (i < endA && j < endB) {
+            char c = text.charAt(i++);
+            char d = text.charAt(j++);
+            if (c != d) {
+                return c - d;
+            }
+        }
+        return (endA - i) - (endB - j);
+    }
+
+    private int compareIgnoringCase(int a, int b) {
+        int i = starts[a];
+        int j = starts[b];
+        int endA = end(a);
+        int endB = end(b);
+        while (i < endA && j < endB) {
+            int difference = compareIgnoringCase(text.charAt(i++), text.charAt(j++));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (endA - i) - (endB - j);
+    }
+
+    // As String.CASE_INSENSITIVE_ORDER does for one pair of chars
+    private static int compareIgnoringCase(char c, char d) {
+        if (c != d) {
+            c = Character.toUpperCase(c);
+            d = Character.toUpperCase(d);
+            if (c != d) {
+                return Character.toLowerCase(c) - Character.toLowerCase(d);
+            }
+        }
+        return 0;
+    }
+
+    // Runs of digits compare by their value, so file2 sorts before file10;
+    // other chars compare ignoring case
+    private int compareNaturally(int a, int b) {
+        int i = starts[a];
+        int j = starts[b];
+        int endA = end(a);
+        int endB = end(b);
+        while (i < endA && j < endB) {
+            char c = text.charAt(i);
+            char d = text.charAt(j);
+            if (isDigit(c) && isDigit(d)) {
+                while (i < endA && text.charAt(i) == '0') {
+                    i++;
+                }
+                while (j < endB && text.charAt(j) == '0') {
+                    j++;
+                }
+                int digitsA = i;
+                while (digitsA < endA && isDigit(text.charAt(digitsA))) {
+                    digitsA++;
+                }
+                int digitsB = j;
+                while (digitsB < endB && isDigit(text.charAt(digitsB))) {
+                    digitsB++;
+                }
+                // Without leading zeros, the longer number is the larger
+                if (digitsA - i != digitsB - j) {
+                    return (digitsA - i) - (digitsB - j);
+                }
+                while (i < digitsA) {
+                    int difference = text.charAt(i++) - text.charAt(j++);
+                    if (difference != 0) {
+                        return difference;
+                    }
+                }
+                continue;
+            }
+            int difference = compareIgnoringCase(c, d);
+            if (difference != 0) {
+                return difference;
+            }
+            i++;
+            j++;
+        }
+        return (endA - i) - (endB - j);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // The number the line starts with after any spaces, such as -12 or
+    // 3.5e6; NaN when it starts with something else
+    private double leadingNumber(int line) {
+        int i = starts[line];
+        int end = end(line);
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        int start = i;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i + 1 < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < end && (text.charAt(exponent) == '-' || text.charAt(exponent) == '+')) {
+                exponent++;
+            }
+            if (exponent < end && isDigit(text.charAt(exponent))) {
+                i = exponent;
+                while (i < end && isDigit(text.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        return Double.parseDouble(text.substring(start, i));
+    }
+
+    private int hash(int line) {
+        int hash = 0;
+        for (int i = starts[line], end = end(line); i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        // Spread the high bits into the ones the table index uses
+        return hash ^ (hash >>> 16);
+    }
+
+    /*
+     * Line numbers with their keys, sorted together. The buffers hold the
+     * left half of a merge, or the line being inserted; a line is compared
+     * where it is against one held in a buffer.
+     */
+    private static final class Run {
+
+        final int[] lines;
+        final long[] keys;
+        // Null when one key says all the keys can
+        final long[] nextKeys;
+        private final int[] lineBuffer;
+        private final long[] keyBuffer;
+        private final long[] nextKeyBuffer;
+        private final LineComparator ties;
+
+        Run(int[] lines, long[] keys, long[] nextKeys, LineComparator ties) {
+            this(lines, keys, nextKeys, new int[lines.length], new long[keys.length],
+                    nextKeys != null ? new long[nextKeys.length] : null, ties);
+        }
+
+        private Run(int[] lines, long[] keys, long[] nextKeys,
+                int[] lineBuffer, long[] keyBuffer, long[] nextKeyBuffer, LineComparator ties) {
+            this.lines = lines;
+            this.keys = keys;
+            this.nextKeys = nextKeys;
+            this.lineBuffer = lineBuffer;
+            this.keyBuffer = keyBuffer;
+            this.nextKeyBuffer = nextKeyBuffer;
+            this.ties = ties;
+        }
+
+        // The same lines and buffers, comparing equal keys another way
+        Run withTies(LineComparator ties) {
+            return new Run(lines, keys, nextKeys, lineBuffer, keyBuffer, nextKeyBuffer, ties);
+        }
+
+        boolean sameKeys(int a, int b) {
+            return keys[a] == keys[b] && (nextKeys == null || nextKeys[a] == nextKeys[b]);
+        }
+
+        int compare(int a, int b) {
+            if (keys[a] != keys[b]) {
+                return Long.compare(keys[a], keys[b]);
+            }
+            if (nextKeys != null && nextKeys[a] != nextKeys[b]) {
+                return Long.compare(nextKeys[a], nextKeys[b]);
+            }
+            return ties.compare(lines[a], lines[b]);
+        }
+
+        int compareToHeld(int position, int held) {
+            if (keys[position] != keyBuffer[held]) {
+                return Long.compare(keys[position], keyBuffer[held]);
+            }
+            if (nextKeys != null && nextKeys[position] != nextKeyBuffer[held]) {
+                return Long.compare(nextKeys[position], nextKeyBuffer[held]);
+            }
+            return ties.compare(lines[position], lineBuffer[held]);
+        }
+
+        void hold(int from, int count) {
+            System.arraycopy(lines, from, lineBuffer, from, count);
+            System.arraycopy(keys, from, keyBuffer, from, count);
+            if (nextKeys != null) {
+                System.arraycopy(nextKeys, from, nextKeyBuffer, from, count);
+            }
+        }
+
+        void move(int to, int from) {
+            lines[to] = lines[from];
+            keys[to] = keys[from];
+            if (nextKeys != null) {
+                nextKeys[to] = nextKeys[from];
+            }
+        }
+
+        void restore(int to, int held) {
+            lines[to] = lineBuffer[held];
+            keys[to] = keyBuffer[held];
+            if (nextKeys != null) {
+                nextKeys[to] = nextKeyBuffer[held];
+            }
+        }
+    }
+
+    private final class MergeSort extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Run run;
+        private final int from;
+        private final int to;
+
+        MergeSort(Run run, int from, int to) {
+            this.run = run;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                // A cancelled sort leaves the rest unsorted; the caller
+                // discards the result
+                if (!cancelled.getAsBoolean()) {
+                    sort(run, from, to);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new MergeSort(run, from, middle), new MergeSort(run, middle, to));
+            merge(run, from, middle, to);
+        }
+    }
+
+    private static void sort(Run run, int from, int to) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                run.hold(i, 1);
+                int j = i;
+                while (j > from && run.compareToHeld(j - 1, i) > 0) {
+                    run.move(j, j - 1);
+                    j--;
+                }
+                run.restore(j, i);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(run, from, middle);
+        sort(run, middle, to);
+        merge(run, from, middle, to);
+    }
+
+    // Only the left half is held: the merged lines written back never
+    // overtake the right half still being read. Ties take the left line, so
+    // equal lines keep their order
+    private static void merge(Run run, int from, int middle, int to) {
+        if (run.compare(middle - 1, middle) <= 0) {
+            return;
+        }
+        run.hold(from, middle - from);
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            if (run.compareToHeld(j, i) < 0) {
+                run.move(k++, j++);
+            } else {
+                run.restore(k++, i++);
+            }
+        }
+        while (i < middle) {
+            run.restore(k++, i++);
+        }
+    }
+}
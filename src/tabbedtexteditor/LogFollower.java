@@ -0,0 +1,300 @@
+/*
+ * Reads what is appended to a growing file, such as a service log. Only
+ * bytes past the last read position are read, whenever the directory's
+ * WatchService reports a change or, on file systems that do not report
+ * changes, when the poll interval runs out. A file that shrinks was
+ * truncated and is read again from the start; a file replaced by another
+ * one at the same path was rotated, and the old one is read to its end
+ * before the new one is followed.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+final class LogFollower {
+
+    interface Listener {
+        // On the FX thread, with the lines read since the last call
+        void appended(List<String> lines);
+    }
+
+    static final String TRUNCATED = "--- file truncated ---";
+    static final String ROTATED = "--- file replaced ---";
+
+    private static final long POLL_MILLIS = 1000;
+    // Following starts this far from the end, like tail
+    private static final long INITIAL_TAIL_BYTES = 4 << 20;
+    private static final int MAX_LINE_CHARS = 64 * 1024;
+
+    private final Path file;
+    private final int maxPendingLines;
+    private final Listener listener;
+    private final ExecutorService reader;
+    private volatile boolean closed;
+
+    // Reader thread only
+    private FileChannel channel;
+    private Object channelKey;
+    private long position;
+    private boolean skipFirstLine;
+    private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+    private final CharBuffer chars = CharBuffer.allocate(64 * 1024);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder partialLine = new StringBuilder();
+
+    // Lines read but not yet handed to the listener, at most maxPendingLines
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private boolean flushScheduled;
+
+    LogFollower(Path file, int maxPendingLines, Listener listener) {
+        this.file = file;
+        this.maxPendingLines = maxPendingLines;
+        this.listener = listener;
+        reader = Workers.newSingleThreadExecutor("log-follow " + file.getFileName(), Thread.MIN_PRIORITY);
+        reader.execute(this::follow);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    void close() {
+        closed = true;
+        reader.shutdownNow();
+    }
+
+    private void follow() {
+        WatchService watchService = null;
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.toAbsolutePath().getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            // Polling alone still follows the file
+        }
+        try {
+            openAtTail();
+            while (!closed) {
+                readAppended();
+                if (watchService != null) {
+                    // Any change in the directory wakes this up; a timeout
+                    // is the poll for changes that were not reported
+                    WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } finally {
+            closeChannel();
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void openAtTail() {
+        if (open()) {
+            try {
+                position = Math.max(0, channel.size() - INITIAL_TAIL_BYTES);
+                if (position > 0) {
+                    // Unless the tail happens to start on a line start
+                    ByteBuffer previous = ByteBuffer.allocate(1);
+                    channel.read(previous, position - 1);
+                    skipFirstLine = previous.get(0) != '\n';
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private boolean open() {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            channelKey = keyOf(Files.readAttributes(file, BasicFileAttributes.class));
+            return true;
+        } catch (IOException e) {
+            // Not there yet, or between rotations
+            channel = null;
+            return false;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+    private void readAppended() {
+        if (channel == null && !open()) {
+            return;
+        }
+        try {
+            if (channel.size() < position) {
+                restart(TRUNCATED);
+                if (!open()) {
+                    return;
+                }
+            }
+            readToEnd();
+            // The open channel still reads the old file after a rename, so
+            // that is drained first and only then is the new file opened
+            if (!Objects.equals(channelKey, currentKey())) {
+                restart(ROTATED);
+                if (open()) {
+                    readToEnd();
+                }
+            }
+        } catch (IOException e) {
+            // Also how a read ends when the follower is closed
+            if (!closed) {
+                e.printStackTrace();
+            }
+            closeChannel();
+        }
+    }
+
+    private Object currentKey() throws IOException {
+        try {
+            return keyOf(Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            // Rotated away and not recreated yet; keep reading the old file
+            return channelKey;
+        }
+    }
+
+    // File systems without file keys fall back to the creation time
+    private static Object keyOf(BasicFileAttributes attributes) {
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+    private void restart(String marker) {
+        closeChannel();
+        position = 0;
+        endLine(true);
+        decoder.reset();
+        bytes.clear();
+        skipFirstLine = false;
+        addLine(marker);
+        flush();
+    }
+
+    private void readToEnd() throws IOException {
+        boolean read = false;
+        while (!closed) {
+            int count = channel.read(bytes, position);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+            read = true;
+            bytes.flip();
+            decoder.decode(bytes, chars, false);
+            bytes.compact();
+            chars.flip();
+            splitLines();
+            chars.clear();
+        }
+        if (read) {
+            flush();
+        }
+    }
+
+    private void splitLines() {
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\n') {
+                endLine(false);
+            } else {
+                partialLine.append(c);
+                // A line this long is cut rather than buffered without bound
+                if (partialLine.length() >= MAX_LINE_CHARS) {
+                    endLine(false);
+                }
+            }
+        }
+    }
+
+    private void endLine(boolean onlyIfPartial) {
+        if (onlyIfPartial && partialLine.length() == 0) {
+            return;
+        }
+        int length = partialLine.length();
+        if (length > 0 && partialLine.charAt(length - 1) == '\r') {
+            partialLine.setLength(length - 1);
+        }
+        if (skipFirstLine) {
+            // Following started in the middle of this line
+            skipFirstLine = false;
+        } else {
+            addLine(partialLine.toString());
+        }
+        partialLine.setLength(0);
+    }
+
+    private synchronized void addLine(String line) {
+        if (pending.size() == maxPendingLines) {
+            pending.removeFirst();
+        }
+        pending.addLast(line);
+    }
+
+    // Lines go to the view in one batch per FX pulse at most
+    private synchronized void flush() {
+        if (!flushScheduled && !pending.isEmpty()) {
+            flushScheduled = true;
+            Platform.runLater(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        List<String> lines;
+        synchronized (this) {
+            lines = new ArrayList<>(pending);
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (!closed) {
+            listener.appended(lines);
+        }
+    }
+}
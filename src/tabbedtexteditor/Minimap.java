@@ -0,0 +1,313 @@
+/*
+ * Pixel-scale overview of a document drawn next to its text area
+ */
+package tabbedtexteditor;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.TextArea;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+class Minimap extends Region {
+
+    private static final int WIDTH = 100;
+    private static final int LINE_HEIGHT = 2;
+    private static final int TILE_LINES = 128;
+    private static final int MAX_CACHED_TILES = 64;
+    private static final int TAB_WIDTH = 4;
+    private static final int TEXT_ARGB = 0xa0808080;
+    private static final Color BACKGROUND = Color.rgb(128, 128, 128, 0.08);
+    private static final Color VIEWPORT = Color.rgb(128, 128, 128, 0.25);
+    private static final Color SEARCH_HIT = Color.rgb(255, 165, 0, 0.8);
+
+    // One renderer for all tabs; tiles are small so a single thread keeps up
+    private static final ExecutorService RENDERER =
+            Workers.newSingleThreadExecutor("minimap-renderer", Thread.MIN_PRIORITY);
+
+    private final DocumentView view;
+    private final Canvas canvas = new Canvas();
+    private final Map<Integer, Image> tiles = new LinkedHashMap<Integer, Image>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+    private final Map<Integer, Integer> tileVersions = new HashMap<>();
+    private final Set<Integer> rendering = new HashSet<>();
+    private final PauseTransition searchRefresh = new PauseTransition(Duration.millis(300));
+
+    private int[] searchHits = new int[0];
+    private String searchTerm;
+    private boolean searchMatchCase;
+    private int searchVersion;
+    private boolean paintScheduled;
+    private int topLine;
+
+    Minimap(DocumentView view) {
+        this.view = view;
+        setPrefWidth(WIDTH);
+        setMinWidth(WIDTH);
+        setMaxWidth(WIDTH);
+        getChildren().add(canvas);
+
+        TextArea textArea = view.getTextArea();
+        textArea.scrollTopProperty().addListener(o -> schedulePaint());
+        textArea.heightProperty().addListener(o -> schedulePaint());
+        textArea.fontProperty().addListener(o -> schedulePaint());
+        widthProperty().addListener(o -> schedulePaint());
+        heightProperty().addListener(o -> schedulePaint());
+        visibleProperty().addListener(o -> schedulePaint());
+
+        view.addEditListener(this::edited);
+        searchRefresh.setOnFinished(e -> refreshSearchHits());
+
+        setOnMousePressed(e -> scrollEditorTo(e.getY()));
+        setOnMouseDragged(e -> scrollEditorTo(e.getY()));
+    }
+
+    void showSearchHits(String term, boolean matchCase) {
+        searchTerm = term;
+        searchMatchCase = matchCase;
+        refreshSearchHits();
+    }
+
+    void clearSearchHits() {
+        showSearchHits(null, false);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+    }
+
+    // Only tiles covering the edited lines are dropped; when lines were added
+    // or removed the following tiles are stale too, but they are re-rendered
+    // lazily and only once they scroll into view
+    private void edited(DocumentView.Edit edit) {
+        LineIndex lineIndex = view.getLineIndex();
+        int firstTile = lineIndex.lineOfOffset(edit.start) / TILE_LINES;
+        if (edit.lineDelta() != 0) {
+            Set<Integer> stale = new HashSet<>(tiles.keySet());
+            stale.addAll(rendering);
+            for (int tile : stale) {
+                if (tile >= firstTile) {
+                    invalidateTile(tile);
+                }
+            }
+        } else {
+            int lastTile = lineIndex.lineOfOffset(edit.start + edit.insertedLength) / TILE_LINES;
+            for (int tile = firstTile; tile <= lastTile; tile++) {
+                invalidateTile(tile);
+            }
+        }
+        if (searchTerm != null) {
+            searchRefresh.playFromStart();
+        }
+        schedulePaint();
+    }
+
+    private void invalidateTile(int tile) {
+        tiles.remove(tile);
+        tileVersions.merge(tile, 1, Integer::sum);
+    }
+
+    private void schedulePaint() {
+        if (!paintScheduled) {
+            paintScheduled = true;
+            Platform.runLater(this::paint);
+        }
+    }
+
+    private void paint() {
+        paintScheduled = false;
+        if (!isVisible()) {
+            return;
+        }
+
+        double width = getWidth();
+        double height = getHeight();
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, width, height);
+        g.setFill(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+
+        TextArea textArea = view.getTextArea();
+        int lineCount = view.getLineIndex().lineCount();
+        double lineHeight = view.lineHeight();
+        double firstVisible = textArea.getScrollTop() / lineHeight;
+        double visibleLines = textArea.getHeight() / lineHeight;
+        int minimapLines = (int) (height / LINE_HEIGHT);
+
+        // Like the scrollbar, the minimap scrolls proportionally when the
+        // document is taller than the minimap itself
+        topLine = 0;
+        if (lineCount > minimapLines) {
+            double scrollable = Math.max(1, lineCount - visibleLines);
+            double fraction = Math.min(1, firstVisible / scrollable);
+            topLine = (int) (fraction * (lineCount - minimapLines));
+        }
+        int bottomLine = Math.min(lineCount, topLine + minimapLines + 1);
+
+        for (int tile = topLine / TILE_LINES; tile * TILE_LINES < bottomLine; tile++) {
+            Image image = tiles.get(tile);
+            if (image != null) {
+                g.drawImage(image, 0, (tile * TILE_LINES - topLine) * LINE_HEIGHT);
+            } else {
+                requestTile(tile);
+            }
+        }
+
+        g.setFill(SEARCH_HIT);
+        int from = Arrays.binarySearch(searchHits, topLine);
+        for (int i = from >= 0 ? from : -from - 1; i < searchHits.length && searchHits[i] < bottomLine; i++) {
+            g.fillRect(0, (searchHits[i] - topLine) * LINE_HEIGHT, width, LINE_HEIGHT);
+        }
+
+        g.setFill(VIEWPORT);
+        g.fillRect(0, (firstVisible - topLine) * LINE_HEIGHT, width, visibleLines * LINE_HEIGHT);
+    }
+
+    private void requestTile(int tile) {
+        if (!rendering.add(tile)) {
+            return;
+        }
+        int version = tileVersions.getOrDefault(tile, 0);
+        String text = tileText(tile);
+
+        RENDERER.execute(() -> {
+            int[] pixels = renderTile(text);
+            Platform.runLater(() -> {
+                rendering.remove(tile);
+                if (version == tileVersions.getOrDefault(tile, 0)) {
+                    WritableImage image = new WritableImage(WIDTH, TILE_LINES * LINE_HEIGHT);
+                    image.getPixelWriter().setPixels(0, 0, WIDTH, TILE_LINES * LINE_HEIGHT,
+                            PixelFormat.getIntArgbInstance(), pixels, 0, WIDTH);
+                    tiles.put(tile, image);
+                }
+                schedulePaint();
+            });
+        });
+    }
+
+    // Copies only the part of each line that can show up in the minimap
+    private String tileText(int tile) {
+        TextArea textArea = view.getTextArea();
+        LineIndex lineIndex = view.getLineIndex();
+        int length = textArea.getLength();
+        int firstLine = tile * TILE_LINES;
+        int lastLine = Math.min(lineIndex.lineCount(), firstLine + TILE_LINES) - 1;
+
+        int start = lineIndex.lineStart(firstLine);
+        int end = lineIndex.lineEnd(lastLine, length);
+        if (end - start <= TILE_LINES * WIDTH) {
+            return textArea.getText(start, end);
+        }
+
+        StringBuilder text = new StringBuilder(TILE_LINES * WIDTH);
+        for (int line = firstLine; line <= lastLine; line++) {
+            int lineStart = lineIndex.lineStart(line);
+            int lineEnd = Math.min(lineIndex.lineEnd(line, length), lineStart + WIDTH);
+            text.append(textArea.getText(lineStart, lineEnd)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static int[] renderTile(String text) {
+        int[] pixels = new int[WIDTH * TILE_LINES * LINE_HEIGHT];
+        int row = 0;
+        int column = 0;
+        for (int i = 0, n = text.length(); i < n && row < TILE_LINES; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                row++;
+                column = 0;
+            } else if (c == '\t') {
+                column += TAB_WIDTH - column % TAB_WIDTH;
+            } else {
+                if (column < WIDTH && !Character.isWhitespace(c)) {
+                    pixels[row * LINE_HEIGHT * WIDTH + column] = TEXT_ARGB;
+                }
+                column++;
+            }
+        }
+        return pixels;
+    }
+
+    private void refreshSearchHits() {
+        int version = ++searchVersion;
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            searchHits = new int[0];
+            schedulePaint();
+            return;
+        }
+
+        // Hits in folded text are marked on the line of the fold
+        String text = view.getTextArea().getText();
+        String fullText = view.getFullText();
+        List<int[]> folds = view.foldExpansions();
+        String term = searchTerm;
+        boolean matchCase = searchMatchCase;
+        RENDERER.execute(() -> {
+            int[] hits = findHitLines(text, fullText, folds, term, matchCase);
+            Platform.runLater(() -> {
+                if (version == searchVersion) {
+                    searchHits = hits;
+                    schedulePaint();
+                }
+            });
+        });
+    }
+
+    private static int[] findHitLines(String text, String fullText, List<int[]> folds, String term,
+            boolean matchCase) {
+        int[] lines = new int[16];
+        int count = 0;
+        int line = 0;
+        int scanned = 0;
+        int fold = 0;
+        int shift = 0;
+        for (int hit = DocumentView.indexOf(fullText, term, 0, matchCase); hit >= 0;
+                hit = DocumentView.indexOf(fullText, term, hit + term.length(), matchCase)) {
+            while (fold < folds.size() && hit >= folds.get(fold)[0] + shift + folds.get(fold)[1]) {
+                shift += folds.get(fold++)[1] - 1;
+            }
+            int index = fold < folds.size() && hit >= folds.get(fold)[0] + shift ? folds.get(fold)[0] : hit - shift;
+            for (; scanned < index; scanned++) {
+                if (text.charAt(scanned) == '\n') {
+                    line++;
+                }
+            }
+            if (count == 0 || lines[count - 1] != line) {
+                if (count == lines.length) {
+                    lines = Arrays.copyOf(lines, count * 2);
+                }
+                lines[count++] = line;
+            }
+        }
+        return Arrays.copyOf(lines, count);
+    }
+
+    private void scrollEditorTo(double y) {
+        TextArea textArea = view.getTextArea();
+        double lineHeight = view.lineHeight();
+        double visibleLines = textArea.getHeight() / lineHeight;
+        double line = topLine + y / LINE_HEIGHT - visibleLines / 2;
+        textArea.setScrollTop(Math.max(0, line * lineHeight));
+    }
+}
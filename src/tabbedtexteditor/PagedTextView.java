@@ -0,0 +1,183 @@
+/*
+ * Read-only tab content for text too large to edit, such as a big inflated
+ * log. Lines are read from the file's mapped pages only when their rows
+ * are shown; a background pass records where every MARK_INTERVAL-th line
+ * starts, so a row is found by skipping at most that many lines.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ToolBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.text.Font;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+class PagedTextView extends BorderPane {
+
+    private static final int MARK_INTERVAL = 64;
+    private static final int MAX_SHOWN_BYTES = 4000;
+    private static final int MAX_CACHED_LINES = 512;
+    // The line count is brought up to date this often while indexing
+    private static final long PUBLISH_MILLIS = 250;
+
+    private static final ExecutorService INDEXER =
+            Workers.newSingleThreadExecutor("line-index", Thread.MIN_PRIORITY);
+
+    private final BinaryFile file;
+    private final Lines lines = new Lines();
+    private final Label status = new Label();
+    private volatile boolean closed;
+
+    PagedTextView(BinaryFile file) {
+        this.file = file;
+        ListView<String> list = new ListView<>(lines);
+        list.setCellFactory(view -> new LineCell());
+        setTop(new ToolBar(new Label(file.getPath().getFileName() + " (read-only)"), status));
+        setCenter(list);
+        status.setText("Counting lines...");
+        INDEXER.execute(this::index);
+    }
+
+    void close() {
+        closed = true;
+        file.close();
+    }
+
+    // Line starts are read through a stream of its own, since the mapped
+    // pages belong to the FX thread
+    private void index() {
+        long[] marks = new long[1024];
+        int lineCount = 1;
+        long offset = 0;
+        long published = System.currentTimeMillis();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.getPath())) {
+            int count;
+            while (!closed && (count = in.read(buffer)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    if (buffer[i] == '\n') {
+                        if (lineCount % MARK_INTERVAL == 0) {
+                            int mark = lineCount / MARK_INTERVAL;
+                            if (mark == marks.length) {
+                                marks = Arrays.copyOf(marks, mark * 2);
+                            }
+                            marks[mark] = offset + i + 1;
+                        }
+                        lineCount++;
+                    }
+                }
+                offset += count;
+                if (System.currentTimeMillis() - published >= PUBLISH_MILLIS) {
+                    publish(Arrays.copyOf(marks, marks.length), lineCount, false);
+                    published = System.currentTimeMillis();
+                }
+            }
+            publish(marks, lineCount, true);
+        } catch (IOException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void publish(long[] marks, int lineCount, boolean done) {
+        Platform.runLater(() -> {
+            if (closed) {
+                return;
+            }
+            lines.grow(marks, lineCount);
+            status.setText(String.format("%,d lines%s", lineCount, done ? "" : " so far"));
+        });
+    }
+
+    // Only the rows shown ask for their line, so the list never holds more
+    // than a page of text
+    private final class Lines extends ObservableListBase<String> {
+
+        private long[] marks = new long[0];
+        private int size;
+        private final Map<Integer, String> cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > MAX_CACHED_LINES;
+            }
+        };
+
+        void grow(long[] newMarks, int newSize) {
+            int oldSize = size;
+            marks = newMarks;
+            size = newSize;
+            // The last line may have grown while it was still being read
+            cache.remove(oldSize - 1);
+            if (newSize > oldSize) {
+                beginChange();
+                nextAdd(oldSize, newSize);
+                endChange();
+            }
+        }
+
+        @Override
+        public String get(int index) {
+            String line = cache.get(index);
+            if (line == null) {
+                line = read(index);
+                cache.put(index, line);
+            }
+            return line;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private String read(int index) {
+            try {
+                long offset = marks[index / MARK_INTERVAL];
+                long end = file.size();
+                for (int skip = index % MARK_INTERVAL; skip > 0 && offset < end; offset++) {
+                    if (file.byteAt(offset) == '\n') {
+                        skip--;
+                    }
+                }
+                byte[] bytes = new byte[(int) Math.min(MAX_SHOWN_BYTES, end - offset)];
+                int length = 0;
+                while (length < bytes.length && file.byteAt(offset + length) != '\n') {
+                    bytes[length] = (byte) file.byteAt(offset + length);
+                    length++;
+                }
+                if (length > 0 && bytes[length - 1] == '\r') {
+                    length--;
+                }
+                return new String(bytes, 0, length, Charset.defaultCharset());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return "";
+            }
+        }
+    }
+
+    private static final class LineCell extends ListCell<String> {
+
+        LineCell() {
+            setFont(Font.font("Monospaced", 12));
+        }
+
+        @Override
+        protected void updateItem(String line, boolean empty) {
+            super.updateItem(line, empty);
+            setText(empty || line == null ? null : line.replace("\t", "    "));
+        }
+    }
+}
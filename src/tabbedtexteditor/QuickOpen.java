@@ -0,0 +1,92 @@
+/*
+ * Finds a file in the workspace by fuzzy match on its name, from the
+ * workspace's file index. Searches run off the FX thread; only the
+ * result of the latest query is shown.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+import javafx.stage.Window;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+class QuickOpen extends QuickPopup<Path> {
+
+    private static final double WIDTH = 600;
+    private static final double HEIGHT = 400;
+    private static final int MAX_RESULTS = 50;
+    private static final ExecutorService SEARCHER =
+            Workers.newSingleThreadExecutor("quick-open", Thread.NORM_PRIORITY);
+
+    private final Label status = new Label();
+    private final FileNameIndex index;
+    private volatile int searches;
+
+    QuickOpen(Window owner, FileNameIndex index, Consumer<File> onChosen) {
+        super(owner, WIDTH, HEIGHT, path -> onChosen.accept(path.toFile()));
+        this.index = index;
+
+        filter.setPromptText("Open file in " + index.getRoot().getFileName());
+        status.setOpacity(0.6);
+        box.getChildren().add(status);
+        filter.textProperty().addListener(o -> search());
+    }
+
+    void show() {
+        stage.show();
+        filter.requestFocus();
+        search();
+    }
+
+    private void search() {
+        String query = query();
+        int search = ++searches;
+        if (query.isEmpty()) {
+            list.getItems().clear();
+            showStatus(-1);
+            return;
+        }
+        SEARCHER.execute(() -> {
+            if (search != searches) {
+                return;
+            }
+            long started = System.nanoTime();
+            List<Path> found = index.search(query, MAX_RESULTS);
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            Platform.runLater(() -> {
+                if (search != searches) {
+                    return;
+                }
+                showItems(found);
+                showStatus(millis);
+            });
+        });
+    }
+
+    private void showStatus(long millis) {
+        String files = index.size() + (index.isComplete() ? " files" : " files so far, still indexing");
+        status.setText(millis < 0 ? files : files + ", searched in " + millis + " ms");
+    }
+
+    // Results still on their way are dropped
+    @Override
+    protected void close() {
+        searches++;
+        super.close();
+    }
+
+    @Override
+    protected String name(Path path) {
+        return path.getFileName().toString();
+    }
+
+    @Override
+    protected String detail(Path path) {
+        Path parent = index.getRoot().relativize(path).getParent();
+        return parent != null ? parent.toString() : "";
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Undecorated popup with a filter field over a list, shared by the quick
+ * switcher and quick open. Each row shows an item's name and, dimmed, where
+ * it lives. Enter or a click chooses the selected item; Escape or losing
+ * focus closes the popup without choosing.
+ */
+package tabbedtexteditor;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.stage.Window;
+import java.util.List;
+import java.util.function.Consumer;
+
+abstract class QuickPopup<T> {
+
+    protected final Stage stage = new Stage(StageStyle.UNDECORATED);
+    protected final TextField filter = new TextField();
+    protected final ListView<T> list = new ListView<>();
+    protected final VBox box = new VBox(6, filter, list);
+    private final Consumer<T> onChosen;
+    private boolean done;
+
+    QuickPopup(Window owner, double width, double height, Consumer<T> onChosen) {
+        this.onChosen = onChosen;
+
+        list.setCellFactory(view -> new ItemCell());
+        list.setOnMouseClicked(e -> choose());
+        VBox.setVgrow(list, Priority.ALWAYS);
+        box.setPadding(new Insets(8));
+
+        Scene scene = new Scene(box, width, height);
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, this::keyPressed);
+        stage.initOwner(owner);
+        stage.setScene(scene);
+        stage.setX(owner.getX() + Math.max(0, (owner.getWidth() - width) / 2));
+        stage.setY(owner.getY() + 80);
+        stage.focusedProperty().addListener((obs, was, focused) -> {
+            if (!focused) {
+                close();
+            }
+        });
+    }
+
+    Scene getScene() {
+        return stage.getScene();
+    }
+
+    protected abstract String name(T item);
+
+    protected abstract String detail(T item);
+
+    protected String query() {
+        return filter.getText() == null ? "" : filter.getText().trim();
+    }
+
+    protected void showItems(List<T> items) {
+        list.setItems(FXCollections.observableArrayList(items));
+        if (!items.isEmpty()) {
+            list.getSelectionModel().select(0);
+            list.scrollTo(0);
+        }
+    }
+
+    protected void keyPressed(KeyEvent e) {
+        if (e.getCode() == KeyCode.DOWN) {
+            move(1);
+        } else if (e.getCode() == KeyCode.UP) {
+            move(-1);
+        } else if (e.getCode() == KeyCode.ENTER) {
+            choose();
+        } else if (e.getCode() == KeyCode.ESCAPE) {
+            close();
+        } else {
+            return;
+        }
+        e.consume();
+    }
+
+    protected void move(int delta) {
+        int count = list.getItems().size();
+        if (count == 0) {
+            return;
+        }
+        int index = Math.floorMod(list.getSelectionModel().getSelectedIndex() + delta, count);
+        list.getSelectionModel().select(index);
+        list.scrollTo(Math.max(0, index - 3));
+    }
+
+    protected void choose() {
+        if (done) {
+            return;
+        }
+        T item = list.getSelectionModel().getSelectedItem();
+        close();
+        if (item != null) {
+            onChosen.accept(item);
+        }
+    }
+
+    protected void close() {
+        if (!done) {
+            done = true;
+            stage.close();
+        }
+    }
+
+    private final class ItemCell extends ListCell<T> {
+
+        private final Label name = new Label();
+        private final Label detail = new Label();
+        private final HBox row = new HBox(12, name, detail);
+
+        ItemCell() {
+            detail.setOpacity(0.6);
+            detail.setMinWidth(0);
+        }
+
+        @Override
+        protected void updateItem(T item, boolean empty) {
+            super.updateItem(item, empty);
+            if (empty || item == null) {
+                setGraphic(null);
+                return;
+            }
+            name.setText(QuickPopup.this.name(item));
+            detail.setText(QuickPopup.this.detail(item));
+            setGraphic(row);
+        }
+    }
+}
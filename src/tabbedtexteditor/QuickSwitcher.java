@@ -0,0 +1,126 @@
+/*
+ * Keyboard switcher over every open document, including the ones parked
+ * out of the tab strip. Typing filters by fuzzy match on the name: the
+ * typed letters must appear in order, and matches at word starts and in
+ * runs rank first. Without a filter documents are listed by recent use.
+ */
+package tabbedtexteditor;
+
+import javafx.scene.control.Tab;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.stage.Window;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+class QuickSwitcher extends QuickPopup<Tab> {
+
+    private static final double WIDTH = 520;
+    private static final double HEIGHT = 360;
+
+    private final List<Tab> tabs;
+    private boolean releaseToChoose;
+
+    QuickSwitcher(Window owner, List<Tab> tabs, Consumer<Tab> onChosen) {
+        super(owner, WIDTH, HEIGHT, onChosen);
+        this.tabs = tabs;
+
+        filter.setPromptText("Go to document");
+        getScene().addEventFilter(KeyEvent.KEY_RELEASED, e -> {
+            if (releaseToChoose && e.getCode() == KeyCode.CONTROL) {
+                choose();
+            }
+        });
+        filter.textProperty().addListener(o -> refilter());
+        refilter();
+    }
+
+    // Opened with Ctrl+Tab, it starts on the previous document and switches
+    // to the selected one as soon as Ctrl is let go
+    void show(boolean releaseToChoose) {
+        this.releaseToChoose = releaseToChoose;
+        if (releaseToChoose) {
+            move(1);
+        }
+        stage.show();
+        filter.requestFocus();
+    }
+
+    // Higher is better; -1 when the query's letters are not all in name, in
+    // order. Also used by quick open on names it does not copy out.
+    static int score(CharSequence name, String query) {
+        int score = 0;
+        int position = 0;
+        int previous = -2;
+        for (int i = 0; i < query.length(); i++) {
+            char c = Character.toLowerCase(query.charAt(i));
+            int found = -1;
+            for (int j = position; j < name.length() && found < 0; j++) {
+                if (Character.toLowerCase(name.charAt(j)) == c) {
+                    found = j;
+                }
+            }
+            if (found < 0) {
+                return -1;
+            }
+            score++;
+            if (found == previous + 1) {
+                score += 4;
+            }
+            if (found == 0 || !Character.isLetterOrDigit(name.charAt(found - 1))
+                    || Character.isUpperCase(name.charAt(found)) && Character.isLowerCase(name.charAt(found - 1))) {
+                score += 6;
+            }
+            previous = found;
+            position = found + 1;
+        }
+        // Among equal matches, shorter names first
+        return score * 1000 - Math.min(name.length(), 999);
+    }
+
+    private void refilter() {
+        String query = query();
+        List<Tab> matches = new ArrayList<>();
+        Map<Tab, Integer> scores = new HashMap<>();
+        for (Tab tab : tabs) {
+            int score = score(tab.getText(), query);
+            if (score >= 0) {
+                matches.add(tab);
+                scores.put(tab, score);
+            }
+        }
+        if (!query.isEmpty()) {
+            // Stable, so equal scores keep the order of use
+            matches.sort(Comparator.comparing(scores::get, Comparator.reverseOrder()));
+        }
+        showItems(matches);
+    }
+
+    // Tab and Shift+Tab step through the list too, so Ctrl+Tab can be
+    // pressed again while Ctrl is held
+    @Override
+    protected void keyPressed(KeyEvent e) {
+        if (e.getCode() == KeyCode.TAB) {
+            move(e.isShiftDown() ? -1 : 1);
+            e.consume();
+        } else {
+            super.keyPressed(e);
+        }
+    }
+
+    @Override
+    protected String name(Tab tab) {
+        return tab.getText();
+    }
+
+    @Override
+    protected String detail(Tab tab) {
+        File file = (File) tab.getUserData();
+        return file != null && file.getParent() != null ? file.getParent() : "";
+    }
+}
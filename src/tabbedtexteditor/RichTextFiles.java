@@ -0,0 +1,526 @@
+/*
+ * Reading and writing documents together with their styles. RTF files
+ * carry the styles themselves; any other file keeps them in a small
+ * binary sidecar next to it (".name.styles"), written only while the
+ * document has styled text.
+ */
+package tabbedtexteditor;
+
+import javafx.scene.paint.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+final class RichTextFiles {
+
+    static final class Content {
+
+        final String text;
+        final StyleRuns styles;
+
+        Content(String text, StyleRuns styles) {
+            this.text = text;
+            this.styles = styles;
+        }
+    }
+
+    private static final int SIDECAR_MAGIC = 0x5354594C;
+    private static final int BOLD = 1;
+    private static final int ITALIC = 2;
+    private static final int UNDERLINE = 4;
+    private static final int FOREGROUND = 8;
+    private static final int BACKGROUND = 16;
+
+    private static final Charset RTF_CHARSET = Charset.forName("windows-1252");
+    // Groups whose text is not part of the document
+    private static final Set<String> SKIPPED_DESTINATIONS = new HashSet<>(Arrays.asList(
+            "fonttbl", "stylesheet", "info", "pict", "object", "header", "headerl", "headerr", "headerf",
+            "footer", "footerl", "footerr", "footerf", "footnote", "fldinst", "listtable", "listoverridetable",
+            "rsidtbl", "themedata", "colorschememapping", "latentstyles", "datastore", "xmlnstbl",
+            "generator", "filetbl", "revtbl", "pgdsctbl"));
+
+    static boolean isRtf(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".rtf");
+    }
+
+    static Content read(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (isRtf(path)) {
+            return new RtfReader(new String(bytes, StandardCharsets.ISO_8859_1)).read();
+        }
+        String text = new String(bytes);
+        return new Content(text, readSidecar(sidecarOf(path), text));
+    }
+
+    // Only the text, for comparing against
+    static String readText(Path path) throws IOException {
+        return read(path).text;
+    }
+
+    static void write(Path path, String text, StyleRuns styles, String fontFamily, double fontSize)
+            throws IOException {
+        if (isRtf(path)) {
+            Files.write(path, toRtf(text, styles, fontFamily, fontSize).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        Files.write(path, text.getBytes());
+        Path sidecar = sidecarOf(path);
+        if (styles.isPlain()) {
+            Files.deleteIfExists(sidecar);
+        } else {
+            writeSidecar(sidecar, text.length(), styles);
+        }
+    }
+
+    private static Path sidecarOf(Path path) {
+        return path.resolveSibling("." + path.getFileName() + ".styles");
+    }
+
+    /*
+     * Sidecar layout: magic, text length, the distinct styles (flags and
+     * colors), then each run as its length and style number, both as
+     * variable-length ints.
+     */
+    private static void writeSidecar(Path sidecar, int textLength, StyleRuns styles) throws IOException {
+        Map<TextStyle, Integer> numbers = new HashMap<>();
+        List<TextStyle> table = new ArrayList<>();
+        List<int[]> runs = new ArrayList<>();
+        styles.forEachRun(0, textLength, (start, end, style) -> {
+            Integer number = numbers.get(style);
+            if (number == null) {
+                number = table.size();
+                numbers.put(style, number);
+                table.add(style);
+            }
+            runs.add(new int[] {end - start, number});
+        });
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar)))) {
+            out.writeInt(SIDECAR_MAGIC);
+            out.writeInt(textLength);
+            writeVarInt(out, table.size());
+            for (TextStyle style : table) {
+                int flags = (style.bold ? BOLD : 0) | (style.italic ? ITALIC : 0) | (style.underline ? UNDERLINE : 0)
+                        | (style.foreground != null ? FOREGROUND : 0) | (style.background != null ? BACKGROUND : 0);
+                out.writeByte(flags);
+                if (style.foreground != null) {
+                    out.writeInt(toRgb(style.foreground));
+                }
+                if (style.background != null) {
+                    out.writeInt(toRgb(style.background));
+                }
+            }
+            writeVarInt(out, runs.size());
+            for (int[] run : runs) {
+                writeVarInt(out, run[0]);
+                writeVarInt(out, run[1]);
+            }
+        }
+    }
+
+    // Styles from the sidecar, or plain ones if there is none or it belongs
+    // to an older version of the text
+    private static StyleRuns readSidecar(Path sidecar, String text) {
+        int textLength = text.length() - countReturns(text);
+        if (!Files.exists(sidecar)) {
+            return new StyleRuns(textLength);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != SIDECAR_MAGIC || in.readInt() != textLength) {
+                return new StyleRuns(textLength);
+            }
+            TextStyle[] table = new TextStyle[readVarInt(in)];
+            for (int i = 0; i < table.length; i++) {
+                int flags = in.readUnsignedByte();
+                Color foreground = (flags & FOREGROUND) != 0 ? fromRgb(in.readInt()) : null;
+                Color background = (flags & BACKGROUND) != 0 ? fromRgb(in.readInt()) : null;
+                table[i] = TextStyle.of((flags & BOLD) != 0, (flags & ITALIC) != 0, (flags & UNDERLINE) != 0,
+                        foreground, background);
+            }
+            StyleRuns styles = new StyleRuns();
+            int runCount = readVarInt(in);
+            for (int i = 0; i < runCount; i++) {
+                int length = readVarInt(in);
+                styles.append(length, table[readVarInt(in)]);
+            }
+            return styles.length() == textLength ? styles : new StyleRuns(textLength);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return new StyleRuns(textLength);
+        }
+    }
+
+    // The text area drops carriage returns, so styles are counted without them
+    private static int countReturns(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\r') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated styles file");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed styles file");
+    }
+
+    private static int toRgb(Color color) {
+        return (int) Math.round(color.getRed() * 255) << 16 | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    private static Color fromRgb(int rgb) {
+        return Color.rgb(rgb >> 16 & 0xFF, rgb >> 8 & 0xFF, rgb & 0xFF);
+    }
+
+    /*
+     * Writes character formatting only: one font, bold, italic, underline,
+     * text color and highlight, with a color table built from the styles.
+     * Characters outside ASCII are written as \\u escapes.
+     */
+    private static String toRtf(String text, StyleRuns styles, String fontFamily, double fontSize) {
+        List<Color> colors = new ArrayList<>();
+        styles.forEachRun(0, text.length(), (start, end, style) -> {
+            for (Color color : new Color[] {style.foreground, style.background}) {
+                if (color != null && !colors.contains(color)) {
+                    colors.add(color);
+                }
+            }
+        });
+
+        StringBuilder rtf = new StringBuilder(text.length() + 256);
+        rtf.append("{\\rtf1\\ansi\\ansicpg1252\\deff0{\\fonttbl{\\f0 ");
+        appendEscaped(rtf, fontFamily, 0, fontFamily.length());
+        rtf.append(";}}\n{\\colortbl;");
+        for (Color color : colors) {
+            int rgb = toRgb(color);
+            rtf.append("\\red").append(rgb >> 16 & 0xFF).append("\\green").append(rgb >> 8 & 0xFF)
+                    .append("\\blue").append(rgb & 0xFF).append(';');
+        }
+        rtf.append("}\n\\f0\\fs").append(Math.round(fontSize * 2)).append(' ');
+        styles.forEachRun(0, text.length(), (start, end, style) -> {
+            rtf.append(style.bold ? "\\b" : "\\b0")
+                    .append(style.italic ? "\\i" : "\\i0")
+                    .append(style.underline ? "\\ul" : "\\ulnone")
+                    .append("\\cf").append(style.foreground == null ? 0 : colors.indexOf(style.foreground) + 1)
+                    .append("\\highlight").append(style.background == null ? 0 : colors.indexOf(style.background) + 1)
+                    .append(' ');
+            appendEscaped(rtf, text, start, end);
+        });
+        return rtf.append("}\n").toString();
+    }
+
+    private static void appendEscaped(StringBuilder rtf, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' || c == '{' || c == '}') {
+                rtf.append('\\').append(c);
+            } else if (c == '\n') {
+                rtf.append("\\par\n");
+            } else if (c == '\t') {
+                rtf.append("\\tab ");
+            } else if (c == '\r') {
+                // Line breaks are written as \par alone
+            } else if (c >= 0x80) {
+                rtf.append("\\u").append((int) (short) c).append('?');
+            } else {
+                rtf.append(c);
+            }
+        }
+    }
+
+    /*
+     * Reads the text of an RTF document with its bold, italic, underline
+     * and color formatting. Anything else (fonts, sizes, paragraph layout,
+     * pictures) is dropped.
+     */
+    private static final class RtfReader {
+
+        private static final class State {
+
+            boolean bold;
+            boolean italic;
+            boolean underline;
+            int foreground;
+            int background;
+            boolean skip;
+            boolean colorTable;
+            int unicodeSkip = 1;
+
+            State copy() {
+                State state = new State();
+                state.bold = bold;
+                state.italic = italic;
+                state.underline = underline;
+                state.foreground = foreground;
+                state.background = background;
+                state.skip = skip;
+                state.colorTable = colorTable;
+                state.unicodeSkip = unicodeSkip;
+                return state;
+            }
+        }
+
+        private final String rtf;
+        private final StringBuilder text = new StringBuilder();
+        private final StyleRuns styles = new StyleRuns();
+        // Index 0 is the document's own color
+        private final List<Color> colors = new ArrayList<>();
+        private final List<State> stack = new ArrayList<>();
+        private State state = new State();
+        private int position;
+        private int runStart;
+        private TextStyle runStyle = TextStyle.PLAIN;
+        private int red;
+        private int green;
+        private int blue;
+        // Characters still to skip after a \\u escape
+        private int pendingSkip;
+
+        RtfReader(String rtf) {
+            this.rtf = rtf;
+        }
+
+        Content read() throws IOException {
+            if (!rtf.startsWith("{\\rtf")) {
+                throw new IOException("Not an RTF document");
+            }
+            while (position < rtf.length()) {
+                char c = rtf.charAt(position++);
+                if (c == '{') {
+                    stack.add(state);
+                    state = state.copy();
+                    state.colorTable = false;
+                } else if (c == '}') {
+                    if (stack.isEmpty()) {
+                        break;
+                    }
+                    state = stack.remove(stack.size() - 1);
+                } else if (c == '\\') {
+                    readControl();
+                } else if (c == '\r' || c == '\n') {
+                    // Line breaks in RTF source mean nothing
+                } else if (state.colorTable) {
+                    if (c == ';') {
+                        colors.add(colors.isEmpty() && red + green + blue < 0 ? null : Color.rgb(
+                                Math.max(red, 0), Math.max(green, 0), Math.max(blue, 0)));
+                        red = green = blue = -1;
+                    }
+                } else {
+                    appendText(c);
+                }
+            }
+            styles.append(text.length() - runStart, runStyle);
+            return new Content(text.toString(), styles);
+        }
+
+        private void readControl() throws IOException {
+            if (position >= rtf.length()) {
+                return;
+            }
+            char c = rtf.charAt(position);
+            if (!Character.isLetter(c)) {
+                position++;
+                if (c == '\'') {
+                    int high = position < rtf.length() ? Character.digit(rtf.charAt(position), 16) : -1;
+                    int low = position + 1 < rtf.length() ? Character.digit(rtf.charAt(position + 1), 16) : -1;
+                    if (high < 0 || low < 0) {
+                        throw new IOException("Malformed RTF");
+                    }
+                    int code = high << 4 | low;
+                    position += 2;
+                    appendText(new String(new byte[] {(byte) code}, RTF_CHARSET).charAt(0));
+                } else if (c == '*') {
+                    state.skip = true;
+                } else if (c == '~') {
+                    appendText('\u00A0');
+                } else if (c == '_') {
+                    appendText('-');
+                } else if (c == '\\' || c == '{' || c == '}') {
+                    appendText(c);
+                } else if (c == '\n' || c == '\r') {
+                    appendText('\n');
+                }
+                return;
+            }
+            int wordStart = position;
+            while (position < rtf.length() && Character.isLetter(rtf.charAt(position))) {
+                position++;
+            }
+            String word = rtf.substring(wordStart, position);
+            int parameterStart = position;
+            if (position < rtf.length() && rtf.charAt(position) == '-') {
+                position++;
+            }
+            int digitsStart = position;
+            while (position < rtf.length() && isAsciiDigit(rtf.charAt(position))) {
+                position++;
+            }
+            // RTF parameters are 16-bit; nine digits always fit an int
+            if (position - digitsStart > 9) {
+                throw new IOException("Malformed RTF");
+            }
+            boolean hasParameter = position > digitsStart;
+            if (!hasParameter) {
+                // A lone '-' is text, not a parameter
+                position = parameterStart;
+            }
+            int parameter = hasParameter ? Integer.parseInt(rtf.substring(parameterStart, position)) : 1;
+            if (position < rtf.length() && rtf.charAt(position) == ' ') {
+                position++;
+            }
+            controlWord(word, parameter, hasParameter);
+        }
+
+        // Character.isDigit also takes digits of other scripts, which
+        // Integer.parseInt would read but RTF does not have
+        private static boolean isAsciiDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private void controlWord(String word, int parameter, boolean hasParameter) {
+            if (SKIPPED_DESTINATIONS.contains(word)) {
+                state.skip = true;
+                return;
+            }
+            switch (word) {
+                case "colortbl":
+                    state.colorTable = true;
+                    state.skip = true;
+                    red = green = blue = -1;
+                    break;
+                case "red":
+                    red = parameter;
+                    break;
+                case "green":
+                    green = parameter;
+                    break;
+                case "blue":
+                    blue = parameter;
+                    break;
+                case "par":
+                case "line":
+                    appendText('\n');
+                    break;
+                case "tab":
+                    appendText('\t');
+                    break;
+                case "emdash":
+                    appendText('\u2014');
+                    break;
+                case "endash":
+                    appendText('\u2013');
+                    break;
+                case "lquote":
+                    appendText('\u2018');
+                    break;
+                case "rquote":
+                    appendText('\u2019');
+                    break;
+                case "ldblquote":
+                    appendText('\u201C');
+                    break;
+                case "rdblquote":
+                    appendText('\u201D');
+                    break;
+                case "bullet":
+                    appendText('\u2022');
+                    break;
+                case "u":
+                    appendText((char) parameter);
+                    pendingSkip = state.unicodeSkip;
+                    break;
+                case "uc":
+                    state.unicodeSkip = parameter;
+                    break;
+                case "plain":
+                    state.bold = false;
+                    state.italic = false;
+                    state.underline = false;
+                    state.foreground = 0;
+                    state.background = 0;
+                    break;
+                case "b":
+                    state.bold = parameter != 0;
+                    break;
+                case "i":
+                    state.italic = parameter != 0;
+                    break;
+                case "ul":
+                    state.underline = parameter != 0;
+                    break;
+                case "ulnone":
+                    state.underline = false;
+                    break;
+                case "cf":
+                    state.foreground = hasParameter ? parameter : 0;
+                    break;
+                case "highlight":
+                case "cb":
+                case "chcbpat":
+                    state.background = hasParameter ? parameter : 0;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void appendText(char c) {
+            if (pendingSkip > 0) {
+                // The fallback for a \\u escape, for readers without Unicode
+                pendingSkip--;
+                return;
+            }
+            if (state.skip) {
+                return;
+            }
+            TextStyle style = TextStyle.of(state.bold, state.italic, state.underline,
+                    color(state.foreground), color(state.background));
+            if (style != runStyle) {
+                styles.append(text.length() - runStart, runStyle);
+                runStart = text.length();
+                runStyle = style;
+            }
+            text.append(c);
+        }
+
+        private Color color(int index) {
+            return index > 0 && index < colors.size() ? colors.get(index) : null;
+        }
+    }
+}
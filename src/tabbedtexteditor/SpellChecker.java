@@ -0,0 +1,334 @@
+/*
+ * Underlines misspelled words over a document's text area. Only the lines
+ * on screen and the text around recent edits are checked, in the
+ * background, and the words found are kept as offsets that move with edits.
+ */
+package tabbedtexteditor;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.skin.TextAreaSkin;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+class SpellChecker extends Region {
+
+    static final List<String> CHECKED_EXTENSIONS = Arrays.asList(".txt", ".md");
+
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_SUGGESTION_DISTANCE = 2;
+    // Lines checked above and below the visible ones
+    private static final int MARGIN_LINES = 20;
+    // Edited text beyond this is left until it scrolls into view
+    private static final int MAX_DIRTY_CHARS = 1 << 16;
+    private static final Color UNDERLINE = Color.rgb(230, 40, 40);
+
+    private static final ExecutorService CHECKER =
+            Workers.newSingleThreadExecutor("spell-checker", Thread.MIN_PRIORITY);
+
+    private final DocumentView view;
+    private final Canvas canvas = new Canvas();
+    private final PauseTransition recheck = new PauseTransition(Duration.millis(250));
+    private final InvalidationListener viewportChanged = o -> viewportChanged();
+    private final DocumentView.EditListener editListener = this::edited;
+
+    // Start and end offsets of the misspelled words, in order
+    private int[] misspelled = new int[64];
+    private int misspelledCount;
+    private int version;
+    // Text edited since the last check, or -1
+    private int dirtyStart = -1;
+    private int dirtyEnd;
+    private boolean paintScheduled;
+    private boolean disposed;
+
+    SpellChecker(DocumentView view) {
+        this.view = view;
+        setMouseTransparent(true);
+        getChildren().add(canvas);
+
+        TextArea textArea = view.getTextArea();
+        textArea.scrollTopProperty().addListener(viewportChanged);
+        textArea.scrollLeftProperty().addListener(viewportChanged);
+        textArea.heightProperty().addListener(viewportChanged);
+        textArea.widthProperty().addListener(viewportChanged);
+        textArea.fontProperty().addListener(viewportChanged);
+        view.addEditListener(editListener);
+        recheck.setOnFinished(e -> check());
+        recheck.playFromStart();
+    }
+
+    static boolean isChecked(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        for (String extension : CHECKED_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void dispose() {
+        disposed = true;
+        recheck.stop();
+        TextArea textArea = view.getTextArea();
+        textArea.scrollTopProperty().removeListener(viewportChanged);
+        textArea.scrollLeftProperty().removeListener(viewportChanged);
+        textArea.heightProperty().removeListener(viewportChanged);
+        textArea.widthProperty().removeListener(viewportChanged);
+        textArea.fontProperty().removeListener(viewportChanged);
+        view.removeEditListener(editListener);
+    }
+
+    // The misspelled word containing offset, as {start, end}, or null
+    int[] misspellingAt(int offset) {
+        for (int i = 0; i < misspelledCount; i += 2) {
+            if (misspelled[i] > offset) {
+                break;
+            }
+            if (offset <= misspelled[i + 1]) {
+                return new int[] {misspelled[i], misspelled[i + 1]};
+            }
+        }
+        return null;
+    }
+
+    List<String> suggestions(String word, int limit) {
+        try {
+            return SpellDictionary.english().suggest(word, MAX_SUGGESTION_DISTANCE, limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        schedulePaint();
+    }
+
+    private void viewportChanged() {
+        schedulePaint();
+        recheck.playFromStart();
+    }
+
+    // Words touching the edit are dropped until rechecked; later ones move
+    // along with the text
+    private void edited(DocumentView.Edit edit) {
+        int removedEnd = edit.start + edit.removedLength;
+        int insertedEnd = edit.start + edit.insertedLength;
+        int delta = edit.insertedLength - edit.removedLength;
+        int kept = 0;
+        for (int i = 0; i < misspelledCount; i += 2) {
+            int start = misspelled[i];
+            int end = misspelled[i + 1];
+            if (end < edit.start) {
+                misspelled[kept++] = start;
+                misspelled[kept++] = end;
+            } else if (start > removedEnd) {
+                misspelled[kept++] = start + delta;
+                misspelled[kept++] = end + delta;
+            }
+        }
+        misspelledCount = kept;
+
+        if (dirtyStart < 0) {
+            dirtyStart = edit.start;
+            dirtyEnd = insertedEnd;
+        } else {
+            dirtyStart = Math.min(dirtyStart, edit.start);
+            int end = dirtyEnd <= edit.start ? dirtyEnd : dirtyEnd >= removedEnd ? dirtyEnd + delta : insertedEnd;
+            dirtyEnd = Math.max(end, insertedEnd);
+        }
+        version++;
+        schedulePaint();
+        recheck.playFromStart();
+    }
+
+    private void check() {
+        if (disposed) {
+            return;
+        }
+        String text = view.getTextArea().getText();
+        LineIndex lineIndex = view.getLineIndex();
+        int[] visible = view.visibleLines();
+        int lastLine = Math.min(lineIndex.lineCount() - 1, visible[1] + MARGIN_LINES);
+        int[] ranges = {
+            lineIndex.lineStart(Math.max(0, visible[0] - MARGIN_LINES)),
+            lineIndex.lineEnd(lastLine, text.length()),
+            0, 0
+        };
+        if (dirtyStart >= 0 && dirtyEnd - dirtyStart <= MAX_DIRTY_CHARS) {
+            int end = Math.min(dirtyEnd, text.length());
+            ranges[2] = lineIndex.lineStart(lineIndex.lineOfOffset(Math.min(dirtyStart, end)));
+            ranges[3] = lineIndex.lineEnd(lineIndex.lineOfOffset(end), text.length());
+        }
+        dirtyStart = -1;
+        int checkedVersion = version;
+
+        CHECKER.execute(() -> {
+            int[] found;
+            try {
+                found = findMisspelled(SpellDictionary.english(), text, ranges);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            Platform.runLater(() -> {
+                if (!disposed && checkedVersion == version) {
+                    replace(ranges, found);
+                    schedulePaint();
+                }
+            });
+        });
+    }
+
+    /*
+     * Words are runs of letters and apostrophes. Those with digits,
+     * underscores or letters outside A-Z are names or another language and
+     * are skipped, as are single letters. The text is only read char by
+     * char; the dictionary looks words up in place.
+     */
+    private static int[] findMisspelled(SpellDictionary dictionary, String text, int[] ranges) {
+        int[] found = new int[32];
+        int count = 0;
+        for (int r = 0; r < ranges.length; r += 2) {
+            int i = ranges[r];
+            int to = ranges[r + 1];
+            while (i < to) {
+                if (!isWordChar(text.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                boolean checkable = true;
+                while (i < to && isWordChar(text.charAt(i))) {
+                    char c = text.charAt(i++);
+                    checkable &= c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isApostrophe(c);
+                }
+                int end = i;
+                while (start < end && isApostrophe(text.charAt(start))) {
+                    start++;
+                }
+                while (end > start && isApostrophe(text.charAt(end - 1))) {
+                    end--;
+                }
+                if (checkable && end - start >= MIN_WORD_LENGTH && !dictionary.contains(text, start, end)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = start;
+                    found[count++] = end;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || isApostrophe(c);
+    }
+
+    private static boolean isApostrophe(char c) {
+        return c == '\'' || c == '\u2019';
+    }
+
+    // Drops the words inside the checked ranges and adds the ones found there
+    private void replace(int[] ranges, int[] found) {
+        int[] merged = new int[misspelledCount + found.length];
+        int count = 0;
+        for (int i = 0; i < misspelledCount; i += 2) {
+            if (!isInside(misspelled[i], ranges)) {
+                merged[count++] = misspelled[i];
+                merged[count++] = misspelled[i + 1];
+            }
+        }
+        System.arraycopy(found, 0, merged, count, found.length);
+        count += found.length;
+
+        // Pairs are sorted by start as one long each
+        long[] pairs = new long[count / 2];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = (long) merged[2 * i] << 32 | merged[2 * i + 1];
+        }
+        Arrays.sort(pairs);
+        int unique = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                merged[2 * unique] = (int) (pairs[i] >>> 32);
+                merged[2 * unique + 1] = (int) pairs[i];
+                unique++;
+            }
+        }
+        misspelled = merged;
+        misspelledCount = 2 * unique;
+    }
+
+    private static boolean isInside(int offset, int[] ranges) {
+        for (int r = 0; r < ranges.length; r += 2) {
+            if (offset >= ranges[r] && offset < ranges[r + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void schedulePaint() {
+        if (!paintScheduled) {
+            paintScheduled = true;
+            Platform.runLater(this::paint);
+        }
+    }
+
+    private void paint() {
+        paintScheduled = false;
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        TextArea textArea = view.getTextArea();
+        if (disposed || !(textArea.getSkin() instanceof TextAreaSkin)) {
+            return;
+        }
+        TextAreaSkin skin = (TextAreaSkin) textArea.getSkin();
+        LineIndex lineIndex = view.getLineIndex();
+        int[] visible = view.visibleLines();
+        int from = lineIndex.lineStart(visible[0]);
+        int to = lineIndex.lineEnd(visible[1], textArea.getLength());
+
+        g.setStroke(UNDERLINE);
+        g.setLineWidth(1);
+        for (int i = 0; i < misspelledCount && misspelled[i] < to; i += 2) {
+            if (misspelled[i + 1] <= from || misspelled[i + 1] > textArea.getLength()) {
+                continue;
+            }
+            Rectangle2D first = skin.getCharacterBounds(misspelled[i]);
+            Rectangle2D last = skin.getCharacterBounds(misspelled[i + 1] - 1);
+            // Words broken over wrapped lines are not underlined
+            if (first == null || last == null || Math.abs(first.getMinY() - last.getMinY()) > 1) {
+                continue;
+            }
+            drawSquiggle(g, first.getMinX(), last.getMaxX(), first.getMaxY());
+        }
+    }
+
+    private static void drawSquiggle(GraphicsContext g, double from, double to, double y) {
+        double step = 2;
+        for (double x = from; x < to; x += step) {
+            boolean up = ((int) ((x - from) / step) & 1) == 0;
+            g.strokeLine(x, up ? y : y - 1.5, Math.min(x + step, to), up ? y - 1.5 : y);
+        }
+    }
+}
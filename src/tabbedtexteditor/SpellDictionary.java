@@ -0,0 +1,265 @@
+/*
+ * English word list as a minimal word graph (DAWG) stored in a flat array
+ * of int edges, built by tools/tabbedtexteditor/DictionaryBuilder. The file
+ * is memory mapped, so opening it reads nothing up front and lookups
+ * touch only a few pages.
+ */
+package tabbedtexteditor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+final class SpellDictionary {
+
+    static final int MAGIC = 0x44415747;
+    // Edge layout: letter symbol, whether a word ends after it, whether it
+    // is its node's last edge, and where the target node's edges start
+    static final int SYMBOL_MASK = 0x3F;
+    static final int FINAL = 1 << 6;
+    static final int LAST = 1 << 7;
+    static final int TARGET_SHIFT = 8;
+
+    private static final int ROOT = 1;
+    private static final int HEADER_INTS = 2;
+    private static final int MAX_WORD_LENGTH = 48;
+
+    private static SpellDictionary english;
+
+    private final IntBuffer edges;
+
+    private SpellDictionary(ByteBuffer data) throws IOException {
+        IntBuffer ints = data.asIntBuffer();
+        if (ints.limit() < HEADER_INTS || ints.get(0) != MAGIC || ints.get(1) > ints.limit() - HEADER_INTS) {
+            throw new IOException("Not a dictionary file");
+        }
+        ints.position(HEADER_INTS);
+        edges = ints.slice();
+    }
+
+    // The bundled English dictionary, opened on first use
+    static synchronized SpellDictionary english() throws IOException {
+        if (english == null) {
+            english = open(SpellDictionary.class.getResource("english.dawg"));
+        }
+        return english;
+    }
+
+    private static SpellDictionary open(URL url) throws IOException {
+        if (url == null) {
+            throw new IOException("Dictionary not found");
+        }
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                return new SpellDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        // Inside the jar it cannot be mapped and is read instead
+        try (InputStream in = url.openStream()) {
+            return new SpellDictionary(ByteBuffer.wrap(in.readAllBytes()));
+        }
+    }
+
+    // Letters and the apostrophe, in the order of their char values
+    static int symbol(char c) {
+        if (c == '\'') {
+            return 0;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 1;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 27;
+        }
+        return -1;
+    }
+
+    private static char letter(int symbol) {
+        return symbol == 0 ? '\'' : symbol <= 26 ? (char) ('A' + symbol - 1) : (char) ('a' + symbol - 27);
+    }
+
+    /*
+     * Whether text[start, end) is a word. A capitalized word may also be a
+     * lowercase one, and one in capitals either; the variants are looked up
+     * by folding case on the fly rather than making new strings.
+     */
+    boolean contains(CharSequence text, int start, int end) {
+        if (lookup(text, start, end, false, false)) {
+            return true;
+        }
+        boolean capitalized = Character.isUpperCase(text.charAt(start));
+        boolean allCaps = capitalized;
+        for (int i = start + 1; i < end && allCaps; i++) {
+            allCaps = !Character.isLowerCase(text.charAt(i));
+        }
+        return capitalized && lookup(text, start, end, true, true)
+                || allCaps && lookup(text, start, end, false, true);
+    }
+
+    private boolean lookup(CharSequence text, int start, int end, boolean lowerFirst, boolean lowerRest) {
+        int node = ROOT;
+        boolean isFinal = false;
+        for (int i = start; i < end; i++) {
+            if (node == 0) {
+                return false;
+            }
+            char c = text.charAt(i);
+            if (i == start ? lowerFirst : lowerRest) {
+                c = Character.toLowerCase(c);
+            }
+            int symbol = symbol(c == '\u2019' ? '\'' : c);
+            int edge = findEdge(node, symbol);
+            if (edge == 0) {
+                return false;
+            }
+            isFinal = (edge & FINAL) != 0;
+            node = edge >>> TARGET_SHIFT;
+        }
+        return isFinal;
+    }
+
+    private int findEdge(int node, int symbol) {
+        if (symbol < 0) {
+            return 0;
+        }
+        for (int index = node; ; index++) {
+            int edge = edges.get(index);
+            if ((edge & SYMBOL_MASK) == symbol) {
+                return edge;
+            }
+            if ((edge & LAST) != 0 || (edge & SYMBOL_MASK) > symbol) {
+                return 0;
+            }
+        }
+    }
+
+    /*
+     * Words within maxDistance edits (insertions, deletions, substitutions
+     * and swaps of neighbours) of word, closest first. Walks the graph
+     * keeping one row of the edit distance table per depth, and leaves a
+     * branch as soon as every entry of its row is over the limit. At equal
+     * distance, names rank below plain words for a lowercase word, then
+     * words with a different first letter, then words that are not the
+     * same letters reordered.
+     */
+    List<String> suggest(String word, int maxDistance, int limit) {
+        int length = Math.min(word.length(), MAX_WORD_LENGTH);
+        char[] target = new char[length];
+        for (int i = 0; i < length; i++) {
+            target[i] = Character.toLowerCase(word.charAt(i));
+        }
+        boolean capitalized = length > 0 && Character.isUpperCase(word.charAt(0));
+        Search search = new Search(target, capitalized, maxDistance);
+        search.visit(ROOT, 0);
+
+        List<String> result = new ArrayList<>();
+        for (List<String> found : search.found) {
+            for (String suggestion : found) {
+                if (result.size() == limit) {
+                    break;
+                }
+                if (capitalized) {
+                    suggestion = Character.toUpperCase(suggestion.charAt(0)) + suggestion.substring(1);
+                }
+                if (!result.contains(suggestion)) {
+                    result.add(suggestion);
+                }
+            }
+        }
+        return result;
+    }
+
+    private final class Search {
+
+        private static final int MAX_FOUND = 32;
+
+        final char[] target;
+        final boolean capitalized;
+        final int maxDistance;
+        final int[][] rows;
+        final char[] path = new char[MAX_WORD_LENGTH];
+        // Words found, by rank
+        final List<List<String>> found = new ArrayList<>();
+
+        Search(char[] target, boolean capitalized, int maxDistance) {
+            this.target = target;
+            this.capitalized = capitalized;
+            this.maxDistance = maxDistance;
+            rows = new int[MAX_WORD_LENGTH + 1][target.length + 1];
+            for (int i = 0; i <= target.length; i++) {
+                rows[0][i] = i;
+            }
+            for (int rank = 0; rank < 8 * (maxDistance + 1); rank++) {
+                found.add(new ArrayList<>());
+            }
+        }
+
+        void visit(int node, int depth) {
+            if (node == 0 || depth == MAX_WORD_LENGTH) {
+                return;
+            }
+            for (int index = node; ; index++) {
+                int edge = edges.get(index);
+                char c = letter(edge & SYMBOL_MASK);
+                path[depth] = c;
+                char folded = Character.toLowerCase(c);
+                int[] previous = rows[depth];
+                int[] row = rows[depth + 1];
+                row[0] = depth + 1;
+                int best = row[0];
+                for (int i = 1; i <= target.length; i++) {
+                    int cost = target[i - 1] == folded ? 0 : 1;
+                    int distance = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                    if (depth > 0 && i > 1 && target[i - 1] == Character.toLowerCase(path[depth - 1])
+                            && target[i - 2] == folded) {
+                        distance = Math.min(distance, rows[depth - 1][i - 2] + 1);
+                    }
+                    row[i] = distance;
+                    best = Math.min(best, distance);
+                }
+                if ((edge & FINAL) != 0 && row[target.length] <= maxDistance) {
+                    int rank = 8 * row[target.length]
+                            + (Character.isUpperCase(path[0]) && !capitalized ? 4 : 0)
+                            + (target.length > 0 && Character.toLowerCase(path[0]) != target[0] ? 2 : 0)
+                            + (isAnagram(depth + 1) ? 0 : 1);
+                    if (found.get(rank).size() < MAX_FOUND) {
+                        found.get(rank).add(new String(path, 0, depth + 1));
+                    }
+                }
+                if (best <= maxDistance) {
+                    visit(edge >>> TARGET_SHIFT, depth + 1);
+                }
+                if ((edge & LAST) != 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isAnagram(int length) {
+            if (length != target.length) {
+                return false;
+            }
+            int[] counts = new int[SYMBOL_MASK + 1];
+            for (int i = 0; i < length; i++) {
+                counts[Math.max(0, symbol(Character.toLowerCase(path[i])))]++;
+                counts[Math.max(0, symbol(target[i]))]--;
+            }
+            for (int count : counts) {
+                if (count != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
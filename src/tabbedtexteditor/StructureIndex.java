@@ -0,0 +1,560 @@
+/*
+ * Brackets and tags of a document with their matching partners
+ */
+package tabbedtexteditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+final class StructureIndex {
+
+    enum Mode {
+        BRACES, XML, HTML, INDENT;
+
+        static Mode forFileName(String name) {
+            String lower = name == null ? "" : name.toLowerCase();
+            if (lower.endsWith(".java") || lower.endsWith(".json") || lower.endsWith(".js")
+                    || lower.endsWith(".css")) {
+                return BRACES;
+            } else if (lower.endsWith(".html") || lower.endsWith(".htm")) {
+                return HTML;
+            } else if (lower.endsWith(".xml")) {
+                return XML;
+            }
+            return INDENT;
+        }
+    }
+
+    // Kinds of neutral tokens (comments, declarations) are 0; they take part
+    // in rescans but not in matching
+    private static final int NEUTRAL = 0;
+    private static final String VOID_ELEMENTS =
+            " area base br col embed hr img input link meta param source track wbr ";
+
+    private Mode mode = Mode.INDENT;
+    private boolean built;
+
+    // Tokens sorted by offset; kind > 0 opens, kind < 0 closes the same kind
+    private int count;
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int[] kinds = new int[256];
+    private int[] matches = new int[256];
+
+    void setMode(Mode mode) {
+        if (this.mode != mode) {
+            this.mode = mode;
+            built = false;
+            count = 0;
+        }
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    // The index is built on first use and only maintained afterwards
+    void ensureBuilt(CharSequence text) {
+        if (!built && mode != Mode.INDENT) {
+            Tokens scanned = scan(text, 0, text.length());
+            count = 0;
+            splice(0, 0, scanned, 0);
+            pairRange(0, count);
+            built = true;
+        }
+    }
+
+    void edited(DocumentView.Edit edit) {
+        if (!built) {
+            return;
+        }
+        String text = edit.newText;
+        int delta = edit.insertedLength - edit.removedLength;
+
+        int from = edit.start;
+        if (mode == Mode.XML || mode == Mode.HTML) {
+            // A '<' left open on an earlier line may be completed by this edit
+            int open = edit.start - 1;
+            while (open >= 0 && text.charAt(open) != '<' && text.charAt(open) != '>') {
+                open--;
+            }
+            if (open >= 0 && text.charAt(open) == '<') {
+                from = open;
+            }
+        }
+        while (from > 0 && text.charAt(from - 1) != '\n') {
+            from--;
+        }
+        int toNew = edit.start + edit.insertedLength;
+        while (toNew < text.length() && text.charAt(toNew) != '\n') {
+            toNew++;
+        }
+        int toOld = toNew - delta;
+
+        // Tokens spanning lines (comments, tags) widen the rescanned range;
+        // an unterminated comment ends at the old text end and is included
+        int first = firstEndingAtOrAfter(from);
+        if (first < count && starts[first] < from) {
+            from = starts[first];
+        }
+        // Repeat until the rescanned lines neither cut through an old token
+        // nor end inside a new one
+        while (true) {
+            int last = firstStartingAtOrAfter(toOld);
+            if (last > first && ends[last - 1] > toOld) {
+                toNew = lineEnd(text, ends[last - 1] + delta);
+                toOld = toNew - delta;
+                continue;
+            }
+            Tokens scanned = scan(text, from, toNew);
+            if (scanned.end > toNew) {
+                toNew = scanned.end;
+                toOld = toNew - delta;
+                continue;
+            }
+            splice(first, last, scanned, delta);
+            repair(first, first + scanned.count);
+            return;
+        }
+    }
+
+    // Token starting at offset, or else ending at offset, that has a partner
+    int tokenAt(int offset) {
+        if (!built) {
+            return -1;
+        }
+        int index = firstStartingAtOrAfter(offset);
+        if (index < count && starts[index] == offset && matches[index] >= 0) {
+            return index;
+        }
+        if (index > 0 && ends[index - 1] == offset && matches[index - 1] >= 0) {
+            return index - 1;
+        }
+        return -1;
+    }
+
+    int partner(int token) {
+        return matches[token];
+    }
+
+    boolean isOpen(int token) {
+        return kinds[token] > 0;
+    }
+
+    int tokenStart(int token) {
+        return starts[token];
+    }
+
+    int tokenEnd(int token) {
+        return ends[token];
+    }
+
+    // Innermost pair around offset whose interior spans several lines
+    int[] enclosingRange(int offset, LineIndex lineIndex) {
+        int j = firstStartingAtOrAfter(offset) - 1;
+        while (j >= 0) {
+            if (kinds[j] < 0 && matches[j] >= 0) {
+                j = matches[j] - 1;
+            } else if (kinds[j] > 0 && matches[j] >= 0 && ends[j] <= offset) {
+                int close = matches[j];
+                if (lineIndex.lineOfOffset(ends[j]) != lineIndex.lineOfOffset(starts[close])) {
+                    return new int[]{ends[j], starts[close]};
+                }
+                j--;
+            } else {
+                j--;
+            }
+        }
+        return null;
+    }
+
+    // Interior of the first pair opened on the line that spans several lines
+    int[] rangeOpeningOnLine(int lineStart, int lineEnd, LineIndex lineIndex) {
+        for (int i = firstStartingAtOrAfter(lineStart); i < count && starts[i] < lineEnd; i++) {
+            if (kinds[i] > 0 && matches[i] >= 0 && starts[matches[i]] > lineEnd) {
+                return new int[]{ends[i], starts[matches[i]]};
+            }
+        }
+        return null;
+    }
+
+    // Multi-line pair interiors at the given nesting depth, in order
+    List<int[]> rangesAtDepth(int depth, LineIndex lineIndex) {
+        List<int[]> ranges = new ArrayList<>();
+        int level = 0;
+        for (int i = 0; i < count; i++) {
+            if (matches[i] < 0) {
+                continue;
+            }
+            if (kinds[i] > 0) {
+                int close = matches[i];
+                if (level == depth
+                        && lineIndex.lineOfOffset(ends[i]) != lineIndex.lineOfOffset(starts[close])) {
+                    ranges.add(new int[]{ends[i], starts[close]});
+                }
+                level++;
+            } else if (kinds[i] < 0) {
+                level--;
+            }
+        }
+        return ranges;
+    }
+
+    // Indentation block starting at the given line: the following lines
+    // indented deeper than it, blank lines included
+    static int[] indentRange(CharSequence text, LineIndex lineIndex, int line) {
+        int length = text.length();
+        int indent = indentOf(text, lineIndex.lineStart(line), lineIndex.lineEnd(line, length));
+        if (indent < 0) {
+            return null;
+        }
+        int last = line;
+        for (int next = line + 1; next < lineIndex.lineCount(); next++) {
+            int nextIndent = indentOf(text, lineIndex.lineStart(next), lineIndex.lineEnd(next, length));
+            if (nextIndent >= 0 && nextIndent <= indent) {
+                break;
+            }
+            if (nextIndent >= 0) {
+                last = next;
+            }
+        }
+        return last > line ? new int[]{lineIndex.lineEnd(line, length), lineIndex.lineEnd(last, length)} : null;
+    }
+
+    // Width of the leading whitespace, or -1 for a blank line
+    static int indentOf(CharSequence text, int start, int end) {
+        int indent = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                indent++;
+            } else if (c == '\t') {
+                indent += 4 - indent % 4;
+            } else {
+                return indent;
+            }
+        }
+        return -1;
+    }
+
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] >= offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private int firstStartingAtOrAfter(int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] >= offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // Replaces tokens [first, last) with the scanned ones and shifts the rest
+    private void splice(int first, int last, Tokens scanned, int delta) {
+        int removed = last - first;
+        int shift = scanned.count - removed;
+        int newCount = count + shift;
+        if (newCount > starts.length) {
+            int capacity = Math.max(newCount, starts.length + (starts.length >> 1));
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            matches = Arrays.copyOf(matches, capacity);
+        }
+        int tail = count - last;
+        System.arraycopy(starts, last, starts, last + shift, tail);
+        System.arraycopy(ends, last, ends, last + shift, tail);
+        System.arraycopy(kinds, last, kinds, last + shift, tail);
+        System.arraycopy(matches, last, matches, last + shift, tail);
+        System.arraycopy(scanned.starts, 0, starts, first, scanned.count);
+        System.arraycopy(scanned.ends, 0, ends, first, scanned.count);
+        System.arraycopy(scanned.kinds, 0, kinds, first, scanned.count);
+        Arrays.fill(matches, first, first + scanned.count, -1);
+        count = newCount;
+
+        for (int i = first + scanned.count; i < count; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+        }
+        for (int i = 0; i < count; i++) {
+            int match = matches[i];
+            if (match >= last) {
+                matches[i] = match + shift;
+            } else if (match >= first && (i < first || i >= first + scanned.count)) {
+                matches[i] = -1;
+            }
+        }
+    }
+
+    /*
+     * Re-pairs only the interior of the innermost pair enclosing the new
+     * tokens [low, high). If that interior no longer balances, the pair itself
+     * is stale and the next enclosing pair is tried, up to the whole document.
+     */
+    private void repair(int low, int high) {
+        int left = low - 1;
+        int right = high;
+        while (true) {
+            int j = left;
+            while (j >= 0) {
+                if (kinds[j] < 0 && matches[j] >= 0) {
+                    j = matches[j] - 1;
+                } else if (kinds[j] > 0 && matches[j] >= right) {
+                    break;
+                } else {
+                    j--;
+                }
+            }
+            int end = j >= 0 ? matches[j] : count;
+            if (pairRange(j + 1, end) || j < 0) {
+                return;
+            }
+            matches[end] = -1;
+            matches[j] = -1;
+            left = j - 1;
+            right = end + 1;
+        }
+    }
+
+    // Stack matching over [from, to); returns whether every token paired up
+    private boolean pairRange(int from, int to) {
+        int[] stack = new int[16];
+        int depth = 0;
+        boolean balanced = true;
+        for (int i = from; i < to; i++) {
+            int kind = kinds[i];
+            matches[i] = -1;
+            if (kind > 0) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = i;
+            } else if (kind < 0) {
+                int open = depth - 1;
+                while (open >= 0 && kinds[stack[open]] != -kind) {
+                    open--;
+                }
+                if (open < 0) {
+                    balanced = false;
+                    continue;
+                }
+                if (open != depth - 1) {
+                    balanced = false;
+                }
+                matches[stack[open]] = i;
+                matches[i] = stack[open];
+                depth = open;
+            }
+        }
+        return balanced && depth == 0;
+    }
+
+    // Scans whole lines; a token running past the range extends the scan to
+    // the end of the line it ends on
+    private Tokens scan(CharSequence text, int from, int to) {
+        Tokens tokens = new Tokens();
+        if (mode == Mode.BRACES) {
+            tokens.end = scanBraces(text, from, to, tokens);
+        } else if (mode != Mode.INDENT) {
+            tokens.end = scanTags(text, from, to, tokens);
+        } else {
+            tokens.end = to;
+        }
+        return tokens;
+    }
+
+    // Strings end at the line end so a rescan never needs more than the edited lines
+    private static int scanBraces(CharSequence text, int from, int to, Tokens tokens) {
+        char quote = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                quote = 0;
+            } else if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '/') {
+                while (i + 1 < to && text.charAt(i + 1) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '*') {
+                int end = indexOf(text, "*/", i + 2);
+                end = end < 0 ? text.length() : end + 2;
+                tokens.add(i, end, NEUTRAL);
+                to = Math.max(to, lineEnd(text, end));
+                i = end - 1;
+            } else {
+                int kind = bracketKind(c);
+                if (kind != 0) {
+                    tokens.add(i, i + 1, kind);
+                }
+            }
+        }
+        return to;
+    }
+
+    private static int lineEnd(CharSequence text, int offset) {
+        int end = offset;
+        while (end < text.length() && text.charAt(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private static int bracketKind(char c) {
+        switch (c) {
+            case '{': return 1;
+            case '}': return -1;
+            case '[': return 2;
+            case ']': return -2;
+            case '(': return 3;
+            case ')': return -3;
+            default: return 0;
+        }
+    }
+
+    private int scanTags(CharSequence text, int from, int to, Tokens tokens) {
+        int length = text.length();
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) != '<') {
+                continue;
+            }
+            if (startsWith(text, i, "<!--")) {
+                int end = indexOf(text, "-->", i + 4);
+                end = end < 0 ? length : end + 3;
+                tokens.add(i, end, NEUTRAL);
+                to = Math.max(to, lineEnd(text, end));
+                i = end - 1;
+            } else if (startsWith(text, i, "<![CDATA[")) {
+                int end = indexOf(text, "]]>", i + 9);
+                end = end < 0 ? length : end + 3;
+                tokens.add(i, end, NEUTRAL);
+                to = Math.max(to, lineEnd(text, end));
+                i = end - 1;
+            } else {
+                int end = tagEnd(text, i + 1);
+                if (end < 0) {
+                    continue;
+                }
+                tokens.add(i, end, tagKind(text, i, end));
+                to = Math.max(to, lineEnd(text, end));
+                i = end - 1;
+            }
+        }
+        return to;
+    }
+
+    // Offset after the closing '>', or -1 when another tag starts first.
+    // Quotes are not tracked, so a '>' inside an attribute value ends the tag;
+    // that keeps a rescan from depending on anything before the open '<'.
+    private static int tagEnd(CharSequence text, int from) {
+        for (int i = from, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            } else if (c == '<') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int tagKind(CharSequence text, int start, int end) {
+        char first = start + 1 < end ? text.charAt(start + 1) : '>';
+        if (first == '?' || first == '!' || text.charAt(end - 2) == '/') {
+            return NEUTRAL;
+        }
+        boolean closing = first == '/';
+        int nameStart = closing ? start + 2 : start + 1;
+        int nameEnd = nameStart;
+        int hash = 0;
+        while (nameEnd < end) {
+            char c = text.charAt(nameEnd);
+            if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                break;
+            }
+            hash = 31 * hash + Character.toLowerCase(c);
+            nameEnd++;
+        }
+        if (nameEnd == nameStart) {
+            return NEUTRAL;
+        }
+        if (mode == Mode.HTML && !closing && isVoidElement(text, nameStart, nameEnd)) {
+            return NEUTRAL;
+        }
+        int kind = (hash & 0x3fffffff) | 1;
+        return closing ? -kind : kind;
+    }
+
+    private static boolean isVoidElement(CharSequence text, int start, int end) {
+        StringBuilder name = new StringBuilder(end - start + 2).append(' ');
+        for (int i = start; i < end; i++) {
+            name.append(Character.toLowerCase(text.charAt(i)));
+        }
+        return VOID_ELEMENTS.contains(name.append(' '));
+    }
+
+    private static boolean startsWith(CharSequence text, int offset, String prefix) {
+        if (offset + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, String target, int from) {
+        for (int i = from, n = text.length() - target.length(); i <= n; i++) {
+            if (startsWith(text, i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Tokens {
+
+        int count;
+        int end;
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int[] kinds = new int[16];
+
+        void add(int start, int end, int kind) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                kinds = Arrays.copyOf(kinds, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            kinds[count] = kind;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Pretty-prints or minifies JSON and XML in a pass or two over the text,
+ * without building a tree, so very large documents format in the space of
+ * their output
+ */
+package tabbedtexteditor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+final class StructuredTextFormatter {
+
+    private static final int INDENT_WIDTH = 4;
+    private static final int PROGRESS_INTERVAL = 1 << 16;
+    private static final Pattern XML_SPACE_PRESERVE = Pattern.compile("\\sxml:space\\s*=\\s*[\"']preserve[\"']");
+    private static final Pattern PRE_TAG = Pattern.compile("<pre[\\s/>]", Pattern.CASE_INSENSITIVE);
+    // How far into a document to look for the signs of HTML
+    private static final int HTML_PROLOG_LIMIT = 4096;
+    // Comments may come before the doctype or root element
+    private static final Pattern HTML_START = Pattern.compile(
+            "(?:<!--.*?-->\\s*)*<(?:!doctype\\s+html[\\s>]|html[\\s>])", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    enum Language {
+        JSON, XML;
+
+        // Decided by the first non-blank character, so it works for unsaved
+        // documents and files with any extension
+        static Language detect(CharSequence text) {
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                if (c == '{' || c == '[') {
+                    return JSON;
+                }
+                if (c == '<') {
+                    return isHtml(text, i) ? null : XML;
+                }
+                if (!Character.isWhitespace(c) && c != '\uFEFF') {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        // HTML is not XML: void elements such as <br> never close. An HTML
+        // doctype gives it away, or an html root without an XML declaration.
+        private static boolean isHtml(CharSequence text, int start) {
+            String prolog = text.subSequence(start, Math.min(text.length(), start + HTML_PROLOG_LIMIT)).toString();
+            if (prolog.startsWith("<?xml")) {
+                return false;
+            }
+            return HTML_START.matcher(prolog).lookingAt();
+        }
+    }
+
+    interface Progress {
+        // Returns false to stop formatting
+        boolean update(int position);
+    }
+
+    private final Language language;
+    private final boolean minify;
+
+    private String text;
+    private StringBuilder out;
+    private Progress progress;
+    private int nextReport;
+    private int depth;
+
+    StructuredTextFormatter(Language language, boolean minify) {
+        this.language = language;
+        this.minify = minify;
+    }
+
+    // Returns the formatted text, or null when progress asked to stop
+    String apply(String text, Progress progress) {
+        this.text = text;
+        this.progress = progress;
+        out = new StringBuilder(minify ? text.length() : text.length() + text.length() / 4);
+        nextReport = 0;
+        depth = 0;
+        boolean finished = language == Language.JSON ? formatJson() : formatXml();
+        String result = finished ? out.toString() : null;
+        this.text = null;
+        out = null;
+        return result;
+    }
+
+    private boolean formatJson() {
+        int n = text.length();
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i < n; i++) {
+            if (i >= nextReport && !report(i)) {
+                return false;
+            }
+            char c = text.charAt(i);
+            if (inString) {
+                out.append(c);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"':
+                    out.append(c);
+                    inString = true;
+                    break;
+                case '{':
+                case '[':
+                    out.append(c);
+                    // Empty objects and arrays stay on one line
+                    int next = skipWhitespace(i + 1);
+                    if (next < n && text.charAt(next) == (c == '{' ? '}' : ']')) {
+                        out.append(text.charAt(next));
+                        i = next;
+                    } else {
+                        depth++;
+                        newLine();
+                    }
+                    break;
+                case '}':
+                case ']':
+                    depth = Math.max(0, depth - 1);
+                    newLine();
+                    out.append(c);
+                    break;
+                case ',':
+                    out.append(c);
+                    newLine();
+                    break;
+                case ':':
+                    out.append(minify ? ":" : ": ");
+                    break;
+                default:
+                    if (!Character.isWhitespace(c)) {
+                        out.append(c);
+                    }
+            }
+        }
+        if (!minify && out.length() > 0) {
+            out.append('\n');
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int from) {
+        int n = text.length();
+        while (from < n && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /*
+     * Every markup item goes on its own line, replacing whitespace-only text
+     * between tags. Other text is never touched: an element with such text
+     * directly in it (mixed content, or only text) is copied as written,
+     * tags and whitespace included, and so are pre elements and those marked
+     * xml:space="preserve".
+     */
+    private boolean formatXml() {
+        BitSet verbatim = verbatimElements();
+        int n = text.length();
+        int element = 0;
+        // Depth of the verbatim element being copied, or -1
+        int verbatimDepth = -1;
+        boolean afterStartTag = false;
+        int i = 0;
+        while (i < n) {
+            if (i >= nextReport && !report(i)) {
+                return false;
+            }
+            if (text.charAt(i) != '<') {
+                int end = textEnd(i);
+                if (verbatimDepth >= 0 || !isBlank(i, end)) {
+                    out.append(text, i, end);
+                }
+                i = end;
+                continue;
+            }
+
+            int end = markupEnd(i);
+            boolean endTag = text.startsWith("</", i);
+            boolean startTag = isStartTag(i, end);
+            if (verbatimDepth >= 0) {
+                out.append(text, i, end);
+                if (startTag) {
+                    depth++;
+                    element++;
+                } else if (endTag) {
+                    depth = Math.max(0, depth - 1);
+                    if (depth <= verbatimDepth) {
+                        verbatimDepth = -1;
+                    }
+                }
+                afterStartTag = false;
+                i = end;
+                continue;
+            }
+
+            if (endTag) {
+                depth = Math.max(0, depth - 1);
+                if (!afterStartTag) {
+                    newLine();
+                }
+            } else if (out.length() > 0) {
+                newLine();
+            }
+            out.append(text, i, end);
+            if (startTag) {
+                if (verbatim.get(element)) {
+                    verbatimDepth = depth;
+                }
+                depth++;
+                element++;
+            }
+            afterStartTag = startTag;
+            i = end;
+        }
+        if (!minify && out.length() > 0) {
+            out.append('\n');
+        }
+        return true;
+    }
+
+    // Numbers, in the order of their start tags, of the elements to copy as
+    // written; found in a pass ahead of formatting, since text can come
+    // after the child elements that would otherwise be laid out first
+    private BitSet verbatimElements() {
+        BitSet verbatim = new BitSet();
+        int[] open = new int[16];
+        int openCount = 0;
+        int element = 0;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            if (text.charAt(i) != '<') {
+                int end = textEnd(i);
+                if (openCount > 0 && !isBlank(i, end)) {
+                    verbatim.set(open[openCount - 1]);
+                }
+                i = end;
+                continue;
+            }
+            int end = markupEnd(i);
+            if (text.startsWith("<![CDATA[", i)) {
+                if (openCount > 0) {
+                    verbatim.set(open[openCount - 1]);
+                }
+            } else if (text.startsWith("</", i)) {
+                openCount = Math.max(0, openCount - 1);
+            } else if (isStartTag(i, end)) {
+                if (openCount == open.length) {
+                    open = Arrays.copyOf(open, openCount * 2);
+                }
+                if (preservesSpace(i, end)) {
+                    verbatim.set(element);
+                }
+                open[openCount++] = element++;
+            }
+            i = end;
+        }
+        return verbatim;
+    }
+
+    private int textEnd(int from) {
+        int end = text.indexOf('<', from);
+        return end < 0 ? text.length() : end;
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int markupEnd(int start) {
+        if (text.startsWith("<!--", start)) {
+            return endOf("-->", start + 4);
+        } else if (text.startsWith("<![CDATA[", start)) {
+            return endOf("]]>", start + 9);
+        } else if (text.startsWith("<?", start)) {
+            return endOf("?>", start + 2);
+        } else if (text.startsWith("<!", start)) {
+            return declarationEnd(start + 2);
+        }
+        return tagEnd(start + 1);
+    }
+
+    // A tag that opens an element, as opposed to an end tag, an empty
+    // element tag or any other markup
+    private boolean isStartTag(int start, int end) {
+        return start + 1 < text.length() && text.charAt(start + 1) != '/' && text.charAt(start + 1) != '!'
+                && text.charAt(start + 1) != '?' && !(end - 2 > start && text.charAt(end - 2) == '/');
+    }
+
+    private boolean preservesSpace(int start, int end) {
+        String tag = text.substring(start, end);
+        return XML_SPACE_PRESERVE.matcher(tag).find() || PRE_TAG.matcher(tag).lookingAt();
+    }
+
+    private int endOf(String terminator, int from) {
+        int index = text.indexOf(terminator, from);
+        return index < 0 ? text.length() : index + terminator.length();
+    }
+
+    // '>' may appear inside quoted attribute values
+    private int tagEnd(int from) {
+        int n = text.length();
+        char quote = 0;
+        for (int i = from; i < n; i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    // A DOCTYPE may carry an internal subset in brackets
+    private int declarationEnd(int from) {
+        int n = text.length();
+        int brackets = 0;
+        for (int i = from; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '[') {
+                brackets++;
+            } else if (c == ']') {
+                brackets--;
+            } else if (c == '>' && brackets <= 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    private void newLine() {
+        if (minify) {
+            return;
+        }
+        out.append('\n');
+        for (int i = depth * INDENT_WIDTH; i > 0; i--) {
+            out.append(' ');
+        }
+    }
+
+    private boolean report(int position) {
+        nextReport = position + PROGRESS_INTERVAL;
+        return progress.update(position);
+    }
+}
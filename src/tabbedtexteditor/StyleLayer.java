@@ -0,0 +1,190 @@
+/*
+ * Draws a document's styled runs over its text area, which itself can only
+ * show one font and color. Styled text on screen is painted over with the
+ * run's background and drawn again in its color. Bold and italic are drawn
+ * by thickening and slanting the same glyphs, so every character stays
+ * where the text area put it and the caret and selection still line up.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.IndexRange;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.skin.TextAreaSkin;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.Shape;
+
+class StyleLayer extends Region {
+
+    private static final double BOLD_OFFSET = 0.6;
+    private static final double ITALIC_SLANT = 0.2;
+
+    private final DocumentView view;
+    private final Canvas canvas = new Canvas();
+    private boolean paintScheduled;
+
+    // Set up for each paint
+    private TextAreaSkin skin;
+    private GraphicsContext g;
+    private String text;
+    private Paint textFill;
+    private Paint background;
+
+    StyleLayer(DocumentView view) {
+        this.view = view;
+        setMouseTransparent(true);
+        getChildren().add(canvas);
+
+        TextArea textArea = view.getTextArea();
+        InvalidationListener changed = o -> schedulePaint();
+        textArea.scrollTopProperty().addListener(changed);
+        textArea.scrollLeftProperty().addListener(changed);
+        textArea.fontProperty().addListener(changed);
+        textArea.caretPositionProperty().addListener(changed);
+        textArea.selectionProperty().addListener(changed);
+        textArea.focusedProperty().addListener(changed);
+        view.addEditListener(edit -> schedulePaint());
+    }
+
+    void refresh() {
+        schedulePaint();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        schedulePaint();
+    }
+
+    private void schedulePaint() {
+        if (!paintScheduled) {
+            paintScheduled = true;
+            Platform.runLater(this::paint);
+        }
+    }
+
+    private void paint() {
+        paintScheduled = false;
+        g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        TextArea textArea = view.getTextArea();
+        StyleRuns styles = view.getStyleRuns();
+        if (styles.isPlain() || !(textArea.getSkin() instanceof TextAreaSkin)) {
+            return;
+        }
+        skin = (TextAreaSkin) textArea.getSkin();
+        text = textArea.getText();
+        textFill = lookUpTextFill(textArea);
+        background = lookUpBackground(textArea);
+        g.setFont(textArea.getFont());
+
+        LineIndex lineIndex = view.getLineIndex();
+        int[] visible = view.visibleLines();
+        styles.forEachRun(lineIndex.lineStart(visible[0]), lineIndex.lineEnd(visible[1], text.length()),
+                (start, end, style) -> {
+                    if (style != TextStyle.PLAIN) {
+                        drawRun(start, end, style);
+                    }
+                });
+        skin = null;
+        text = null;
+    }
+
+    // Runs are drawn in pieces that do not cross tabs, line ends or the
+    // selection, which the text area keeps drawing itself
+    private void drawRun(int start, int end, TextStyle style) {
+        TextArea textArea = view.getTextArea();
+        IndexRange selection = textArea.getSelection();
+        int position = start;
+        while (position < end) {
+            char c = text.charAt(position);
+            if (c == '\t' || c == '\n') {
+                position++;
+                continue;
+            }
+            boolean selected = position >= selection.getStart() && position < selection.getEnd();
+            int pieceEnd = position + 1;
+            while (pieceEnd < end && text.charAt(pieceEnd) != '\t' && text.charAt(pieceEnd) != '\n'
+                    && pieceEnd != selection.getStart() && pieceEnd != selection.getEnd()) {
+                pieceEnd++;
+            }
+            drawPiece(position, pieceEnd, style, selected);
+            position = pieceEnd;
+        }
+    }
+
+    private void drawPiece(int start, int end, TextStyle style, boolean selected) {
+        Rectangle2D first = skin.getCharacterBounds(start);
+        Rectangle2D last = skin.getCharacterBounds(end - 1);
+        if (first == null || last == null || Math.abs(first.getMinY() - last.getMinY()) > 1) {
+            return;
+        }
+        double x = first.getMinX();
+        double width = last.getMaxX() - x;
+        double top = first.getMinY();
+        double baseline = top + view.baselineOffset();
+        Paint fill = style.foreground != null ? style.foreground : textFill;
+
+        if (!selected && style.changesGlyphs()) {
+            g.setFill(style.background != null ? style.background : background);
+            g.fillRect(x, top, width, first.getHeight());
+            g.setFill(fill);
+            g.save();
+            if (style.italic) {
+                g.transform(1, 0, -ITALIC_SLANT, 1, ITALIC_SLANT * baseline, 0);
+            }
+            String piece = text.substring(start, end);
+            g.fillText(piece, x, baseline);
+            if (style.bold) {
+                g.fillText(piece, x + BOLD_OFFSET, baseline);
+            }
+            g.restore();
+            drawCaret(start, end, first, last);
+        }
+        if (style.underline) {
+            g.setStroke(selected ? textFill : fill);
+            g.setLineWidth(1);
+            g.strokeLine(x, baseline + 1.5, x + width, baseline + 1.5);
+        }
+    }
+
+    // The caret is drawn below this layer, so it is drawn again where a
+    // piece covers it
+    private void drawCaret(int start, int end, Rectangle2D first, Rectangle2D last) {
+        TextArea textArea = view.getTextArea();
+        int caret = textArea.getCaretPosition();
+        if (!textArea.isFocused() || caret < start || caret > end) {
+            return;
+        }
+        double x = caret == end ? last.getMaxX() : skin.getCharacterBounds(caret).getMinX();
+        g.setStroke(textFill);
+        g.setLineWidth(1);
+        g.strokeLine(Math.round(x) + 0.5, first.getMinY(), Math.round(x) + 0.5, first.getMaxY());
+    }
+
+    private static Paint lookUpTextFill(TextArea textArea) {
+        Node text = textArea.lookup(".text");
+        Paint fill = text instanceof Shape ? ((Shape) text).getFill() : null;
+        return fill != null ? fill : Color.BLACK;
+    }
+
+    private static Paint lookUpBackground(TextArea textArea) {
+        Node content = textArea.lookup(".content");
+        if (content instanceof Region) {
+            Background background = ((Region) content).getBackground();
+            if (background != null && !background.getFills().isEmpty()) {
+                return background.getFills().get(background.getFills().size() - 1).getFill();
+            }
+        }
+        return Color.WHITE;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Styles of a document as consecutive runs covering all of its text, kept
+ * in a balanced tree (a treap) ordered by position. Nodes hold run lengths
+ * and subtree totals rather than offsets, so an edit only updates the path
+ * down to the runs it touches instead of shifting every run after them.
+ * Neighbouring runs never share a style.
+ */
+package tabbedtexteditor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+final class StyleRuns {
+
+    interface RunVisitor {
+        void visit(int start, int end, TextStyle style);
+    }
+
+    private static final class Node {
+
+        final TextStyle style;
+        final int priority;
+        int length;
+        int total;
+        Node left;
+        Node right;
+
+        Node(TextStyle style, int length, int priority) {
+            this.style = style;
+            this.length = length;
+            this.priority = priority;
+            total = length;
+        }
+    }
+
+    private final Random random = new Random();
+    private Node root;
+
+    StyleRuns() {
+    }
+
+    // Plain text of the given length
+    StyleRuns(int length) {
+        append(length, TextStyle.PLAIN);
+    }
+
+    int length() {
+        return total(root);
+    }
+
+    boolean isPlain() {
+        return root == null || root.left == null && root.right == null && root.style == TextStyle.PLAIN;
+    }
+
+    void append(int length, TextStyle style) {
+        if (length > 0) {
+            root = join(root, new Node(style, length, random.nextInt()));
+        }
+    }
+
+    // Appends the runs of [from, to) of other
+    void append(StyleRuns other, int from, int to) {
+        other.forEachRun(from, to, (start, end, style) -> append(end - start, style));
+    }
+
+    StyleRuns slice(int from, int to) {
+        StyleRuns slice = new StyleRuns();
+        slice.append(this, from, to);
+        return slice;
+    }
+
+    // Gives the text from start on the styles of runs, as far as it goes
+    void overwrite(int start, StyleRuns runs) {
+        int end = Math.min(start + runs.length(), length());
+        if (start >= end) {
+            return;
+        }
+        Node[] before = split(root, start);
+        Node[] after = split(before[1], end - start);
+        StyleRuns middle = runs.slice(0, end - start);
+        root = join(join(before[0], middle.root), after[1]);
+    }
+
+    // Style of the character at offset, or of the last one past the end
+    TextStyle styleAt(int offset) {
+        Node node = root;
+        if (node == null) {
+            return TextStyle.PLAIN;
+        }
+        offset = Math.max(0, Math.min(offset, node.total - 1));
+        while (true) {
+            int leftTotal = total(node.left);
+            if (offset < leftTotal) {
+                node = node.left;
+            } else if (offset < leftTotal + node.length) {
+                return node.style;
+            } else {
+                offset -= leftTotal + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    // Inserted text takes the style of the character before it, or of the
+    // one after it at the start of the document
+    void edited(int start, int removedLength, int insertedLength) {
+        if (removedLength > 0) {
+            Node[] before = split(root, start);
+            Node[] after = split(before[1], removedLength);
+            root = join(before[0], after[1]);
+        }
+        if (insertedLength > 0) {
+            if (root == null) {
+                root = new Node(TextStyle.PLAIN, insertedLength, random.nextInt());
+            } else {
+                grow(Math.max(0, start - 1), insertedLength);
+            }
+        }
+    }
+
+    void restyle(int start, int end, UnaryOperator<TextStyle> change) {
+        start = Math.max(0, start);
+        end = Math.min(end, length());
+        if (start >= end) {
+            return;
+        }
+        Node[] before = split(root, start);
+        Node[] after = split(before[1], end - start);
+        List<Node> runs = new ArrayList<>();
+        collect(after[0], runs);
+        Node middle = null;
+        for (Node run : runs) {
+            middle = join(middle, new Node(change.apply(run.style), run.length, random.nextInt()));
+        }
+        root = join(join(before[0], middle), after[1]);
+    }
+
+    // Runs overlapping [from, to), cut to that range, in order
+    void forEachRun(int from, int to, RunVisitor visitor) {
+        visit(root, 0, from, to, visitor);
+    }
+
+    private void visit(Node node, int base, int from, int to, RunVisitor visitor) {
+        if (node == null || base >= to || base + node.total <= from) {
+            return;
+        }
+        visit(node.left, base, from, to, visitor);
+        int start = base + total(node.left);
+        int end = start + node.length;
+        if (start < to && end > from) {
+            visitor.visit(Math.max(start, from), Math.min(end, to), node.style);
+        }
+        visit(node.right, end, from, to, visitor);
+    }
+
+    private static void collect(Node node, List<Node> runs) {
+        if (node != null) {
+            collect(node.left, runs);
+            runs.add(node);
+            collect(node.right, runs);
+        }
+    }
+
+    private void grow(int offset, int amount) {
+        Node node = root;
+        while (true) {
+            node.total += amount;
+            int leftTotal = total(node.left);
+            if (offset < leftTotal) {
+                node = node.left;
+            } else if (offset < leftTotal + node.length) {
+                node.length += amount;
+                return;
+            } else {
+                offset -= leftTotal + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    // Splits into the first offset characters and the rest, cutting a run
+    // in two where the offset falls inside it
+    private Node[] split(Node node, int offset) {
+        if (node == null) {
+            return new Node[2];
+        }
+        int leftTotal = total(node.left);
+        if (offset <= leftTotal) {
+            Node[] parts = split(node.left, offset);
+            node.left = parts[1];
+            update(node);
+            return new Node[] {parts[0], node};
+        }
+        if (offset >= leftTotal + node.length) {
+            Node[] parts = split(node.right, offset - leftTotal - node.length);
+            node.right = parts[0];
+            update(node);
+            return new Node[] {node, parts[1]};
+        }
+        // The rest of the run keeps the priority, which still heads its subtree
+        Node rest = new Node(node.style, leftTotal + node.length - offset, node.priority);
+        rest.right = node.right;
+        update(rest);
+        node.length = offset - leftTotal;
+        node.right = null;
+        update(node);
+        return new Node[] {node, rest};
+    }
+
+    // Concatenates two trees, merging the runs where they meet if their
+    // styles are the same
+    private Node join(Node left, Node right) {
+        if (left != null && right != null && last(left).style == first(right).style) {
+            int length = first(right).length;
+            right = split(right, length)[1];
+            for (Node node = left; node != null; node = node.right) {
+                node.total += length;
+                if (node.right == null) {
+                    node.length += length;
+                }
+            }
+        }
+        return merge(left, right);
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static Node first(Node node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static Node last(Node node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static int total(Node node) {
+        return node == null ? 0 : node.total;
+    }
+
+    private static void update(Node node) {
+        node.total = total(node.left) + node.length + total(node.right);
+    }
+}
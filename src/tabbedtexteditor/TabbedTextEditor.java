@@ -3,10 +3,14 @@
  */
 package tabbedtexteditor;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -22,8 +26,11 @@ import javafx.scene.text.FontWeight;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,6 +40,10 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class TabbedTextEditor extends Application {
 
@@ -48,8 +59,39 @@ public class TabbedTextEditor extends Application {
     private ObservableList<DocumentInfo> recentDocuments = FXCollections.observableArrayList();
     private FilteredList<DocumentInfo> filteredDocuments = new FilteredList<>(recentDocuments);
     private boolean darkMode = false;
+    private boolean showMinimap = true;
     private static final String RECENT_FILES_PATH = "recent_files.dat";
     private static final String SETTINGS_PATH = "app_settings.dat";
+    private static final String SESSION_PATH = "session.dat";
+
+    // Restored tabs stay empty until first selected; the contents of the
+    // next few are read ahead in the background meanwhile
+    private static final int MAX_PREFETCHED_TABS = 2;
+    private final Map<Tab, SessionTab> pendingTabs = new HashMap<>();
+    private final Map<Tab, RichTextFiles.Content> prefetchedContent = new HashMap<>();
+    // Tabs being read ahead or holding what was read, and tabs that could
+    // not be read, which are left until selected
+    private final Set<Tab> prefetching = new HashSet<>();
+    private final Set<Tab> prefetchFailed = new HashSet<>();
+    private final ExecutorService sessionPrefetcher =
+            Workers.newSingleThreadExecutor("session-prefetch", Thread.MIN_PRIORITY);
+    private final ExecutorService documentFormatter =
+            Workers.newSingleThreadExecutor("document-formatter", Thread.NORM_PRIORITY);
+    private final ExecutorService differ = Workers.newSingleThreadExecutor("compare", Thread.NORM_PRIORITY);
+    private final WordIndex wordIndex = new WordIndex();
+    // Beyond this many tabs the least recently used ones leave the tab
+    // strip; they stay open and are reached through the quick switcher
+    private static final int MAX_SHOWN_TABS = 30;
+    private final DocumentRegistry documents = new DocumentRegistry();
+    private final PauseTransition sessionSave = new PauseTransition(Duration.seconds(1));
+    private final WorkspaceSidebar workspace = new WorkspaceSidebar(this::openFile);
+    // Tabs showing one entry of a zip file, whose tab holds the zip itself
+    private final Map<Tab, String> zipEntries = new HashMap<>();
+    private final ExecutorService decompressor = Workers.newSingleThreadExecutor("decompress", Thread.NORM_PRIORITY);
+    private int compressionLevel = 6;
+    // Last pattern lines were kept or removed by
+    private String linePattern = "";
+    private String workspaceFolder;
 
     private final List<String> suggestedExtensions = Arrays.asList(
             ".txt", ".java", ".html", ".css", ".js", ".json", ".xml", ".md", ".rtf"
@@ -69,7 +111,11 @@ public class TabbedTextEditor extends Application {
         createSettingsPage();
         setupEditorUI();
 
-        rootPane.getChildren().add(welcomePane);
+        if (restoreSession()) {
+            rootPane.getChildren().add(editorPane);
+        } else {
+            rootPane.getChildren().add(welcomePane);
+        }
 
         Scene scene = new Scene(rootPane, 1000, 700);
         applyCurrentTheme(scene);
@@ -77,10 +123,12 @@ public class TabbedTextEditor extends Application {
         primaryStage.getIcons().add(new Image("file:text-editor-icon.png"));
         primaryStage.setScene(scene);
         primaryStage.show();
+        Platform.runLater(this::prefetchSessionTabs);
 
         primaryStage.setOnCloseRequest(e -> {
             saveRecentFiles();
             saveSettings();
+            saveSession();
         });
     }
 
@@ -99,6 +147,10 @@ public class TabbedTextEditor extends Application {
             applyCurrentTheme(rootPane.getScene());
         });
 
+        // 1 is fastest, 9 smallest; used when saving .gz files and .zip entries
+        Spinner<Integer> compressionSpinner = new Spinner<>(1, 9, compressionLevel);
+        compressionSpinner.valueProperty().addListener((obs, old, level) -> compressionLevel = level);
+
         Button backButton = new Button("Back to Home");
         backButton.setOnAction(e -> switchToWelcome());
 
@@ -107,6 +159,8 @@ public class TabbedTextEditor extends Application {
                 new Separator(),
                 new Label("Appearance:"), themeToggle,
                 new Separator(),
+                new Label("Compression level:"), compressionSpinner,
+                new Separator(),
                 backButton
         );
     }
@@ -130,6 +184,21 @@ public class TabbedTextEditor extends Application {
     private void loadSettings() {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(SETTINGS_PATH))) {
             darkMode = (boolean) ois.readObject();
+            try {
+                showMinimap = (boolean) ois.readObject();
+            } catch (EOFException e) {
+                // Settings written before the minimap existed
+            }
+            try {
+                workspaceFolder = (String) ois.readObject();
+            } catch (EOFException e) {
+                // Settings written before workspaces existed
+            }
+            try {
+                compressionLevel = (int) ois.readObject();
+            } catch (EOFException e) {
+                // Settings written before compressed files could be saved
+            }
         } catch (Exception e) {
             // Use default settings if file doesn't exist
             darkMode = false;
@@ -139,6 +208,10 @@ public class TabbedTextEditor extends Application {
     private void saveSettings() {
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(SETTINGS_PATH))) {
             oos.writeObject(darkMode);
+            oos.writeObject(showMinimap);
+            Path folder = workspace.getFolder();
+            oos.writeObject(folder != null ? folder.toString() : null);
+            oos.writeObject(compressionLevel);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -164,6 +237,167 @@ public class TabbedTextEditor extends Application {
         }
     }
 
+    private boolean restoreSession() {
+        List<SessionTab> tabs;
+        int selected;
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(SESSION_PATH))) {
+            tabs = new ArrayList<>();
+            for (Object tab : (List<?>) ois.readObject()) {
+                tabs.add((SessionTab) tab);
+            }
+            selected = (int) ois.readObject();
+        } catch (Exception e) {
+            // No session yet - start on the welcome screen
+            return false;
+        }
+
+        Map<Tab, SessionTab> restored = new LinkedHashMap<>();
+        Tab selectedTab = null;
+        for (int i = 0; i < tabs.size(); i++) {
+            SessionTab state = tabs.get(i);
+            File file = new File(state.getPath());
+            if (!file.exists()) {
+                continue;
+            }
+            Tab tab = createFileTab(file);
+            restored.put(tab, state);
+            if (i == selected || selectedTab == null) {
+                selectedTab = tab;
+            }
+        }
+        if (selectedTab == null) {
+            return false;
+        }
+        // Adding the tabs selects the first one; they only become pending
+        // afterwards so that does not load it
+        for (Tab tab : restored.keySet()) {
+            documents.add(tab, (File) tab.getUserData());
+        }
+        tabPane.getTabs().addAll(restored.keySet());
+        pendingTabs.putAll(restored);
+        tabPane.getSelectionModel().select(selectedTab);
+        if (pendingTabs.containsKey(selectedTab)) {
+            loadPendingTab(selectedTab);
+        }
+        parkExcessTabs(selectedTab);
+        return true;
+    }
+
+    // Reads ahead the pending tabs that follow the selected one in the tab
+    // strip, keeping at most MAX_PREFETCHED_TABS contents at a time; each
+    // tab loaded or closed makes room for the next
+    private void prefetchSessionTabs() {
+        List<Tab> strip = tabPane.getTabs();
+        int first = tabPane.getSelectionModel().getSelectedIndex() + 1;
+        for (int i = 0; i < strip.size() && prefetching.size() < MAX_PREFETCHED_TABS; i++) {
+            Tab tab = strip.get((first + i) % strip.size());
+            if (!pendingTabs.containsKey(tab) || prefetchFailed.contains(tab) || !prefetching.add(tab)) {
+                continue;
+            }
+            Path path = new File(pendingTabs.get(tab).getPath()).toPath();
+            sessionPrefetcher.execute(() -> {
+                try {
+                    RichTextFiles.Content content = RichTextFiles.read(path);
+                    Platform.runLater(() -> {
+                        if (pendingTabs.containsKey(tab)) {
+                            prefetchedContent.put(tab, content);
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    // Reported when the tab is selected; the slot goes to
+                    // the next tab meanwhile
+                    Platform.runLater(() -> {
+                        prefetching.remove(tab);
+                        if (pendingTabs.containsKey(tab)) {
+                            prefetchFailed.add(tab);
+                        }
+                        prefetchSessionTabs();
+                    });
+                }
+            });
+        }
+    }
+
+    private void loadPendingTab(Tab tab) {
+        SessionTab state = pendingTabs.get(tab);
+        File file = (File) tab.getUserData();
+        RichTextFiles.Content content = prefetchedContent.remove(tab);
+        prefetching.remove(tab);
+        prefetchFailed.remove(tab);
+        try {
+            if (content == null) {
+                content = RichTextFiles.read(file.toPath());
+            }
+        } catch (IOException e) {
+            pendingTabs.remove(tab);
+            tabPane.getTabs().remove(tab);
+            prefetchSessionTabs();
+            showAlert("Error", "Could not open file: " + e.getMessage());
+            return;
+        }
+        pendingTabs.remove(tab);
+        prefetchSessionTabs();
+
+        DocumentView view = createDocumentView(content.text);
+        view.setStyleRuns(content.styles);
+        view.setLanguage(file.getName());
+        TextArea textArea = view.getTextArea();
+        textArea.setFont(Font.font(state.getFontFamily(),
+                state.isBold() ? FontWeight.BOLD : FontWeight.NORMAL,
+                state.isItalic() ? FontPosture.ITALIC : FontPosture.REGULAR,
+                state.getFontSize()));
+        textArea.positionCaret(Math.min(state.getCaretPosition(), textArea.getLength()));
+        tab.setContent(view);
+        // Scrolling only sticks once the text has been laid out
+        Platform.runLater(() -> {
+            textArea.setScrollTop(state.getScrollTop());
+            textArea.setScrollLeft(state.getScrollLeft());
+        });
+    }
+
+    private void scheduleSessionSave() {
+        sessionSave.playFromStart();
+    }
+
+    private void saveSession() {
+        List<SessionTab> tabs = new ArrayList<>();
+        int selected = -1;
+        List<Tab> openTabs = new ArrayList<>(tabPane.getTabs());
+        openTabs.addAll(documents.parkedTabs());
+        for (Tab tab : openTabs) {
+            SessionTab state = getSessionState(tab);
+            if (state != null) {
+                if (tab == tabPane.getSelectionModel().getSelectedItem()) {
+                    selected = tabs.size();
+                }
+                tabs.add(state);
+            }
+        }
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(SESSION_PATH))) {
+            oos.writeObject(tabs);
+            oos.writeObject(selected);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Only tabs backed by a file are part of the session
+    private SessionTab getSessionState(Tab tab) {
+        if (pendingTabs.containsKey(tab)) {
+            return pendingTabs.get(tab);
+        }
+        File file = (File) tab.getUserData();
+        TextArea textArea = getTextArea(tab);
+        if (file == null || textArea == null || CompressedFiles.isCompressed(file.toPath())) {
+            return null;
+        }
+        Font font = textArea.getFont();
+        String style = font.getStyle().toLowerCase();
+        return new SessionTab(file.getAbsolutePath(), textArea.getCaretPosition(),
+                textArea.getScrollTop(), textArea.getScrollLeft(), font.getFamily(), font.getSize(),
+                style.contains("bold"), style.contains("italic"));
+    }
+
     private void createAboutPage() {
         aboutPane.setAlignment(Pos.CENTER);
         aboutPane.setPadding(new Insets(40));
@@ -287,13 +521,16 @@ public class TabbedTextEditor extends Application {
             }
         });
 
+        Button openFolderBtn = new Button("Open Folder...");
+        openFolderBtn.setOnAction(e -> openFolder());
+
         Button aboutBtn = new Button("About");
         aboutBtn.setOnAction(e -> switchToAbout());
 
         Button settingsBtn = new Button("Settings");
         settingsBtn.setOnAction(e -> switchToSettings());
 
-        buttonBox.getChildren().addAll(newDocBtn, openBtn, aboutBtn, settingsBtn);
+        buttonBox.getChildren().addAll(newDocBtn, openBtn, openFolderBtn, aboutBtn, settingsBtn);
         buttonBox.setAlignment(Pos.CENTER);
 
         welcomePane.getChildren().addAll(header, searchBox, documentsTable, buttonBox);
@@ -399,6 +636,60 @@ public class TabbedTextEditor extends Application {
 
         editorPane.setTop(new VBox(menuBar, toolbar));
         editorPane.setCenter(tabPane);
+        editorPane.setLeft(workspace);
+        if (workspaceFolder != null && new File(workspaceFolder).isDirectory()) {
+            workspace.setFolder(new File(workspaceFolder).toPath());
+        }
+
+        sessionSave.setOnFinished(e -> saveSession());
+        tabPane.getTabs().addListener((ListChangeListener<Tab>) c -> {
+            while (c.next()) {
+                for (Tab tab : c.getRemoved()) {
+                    // Parked tabs are still open, only out of the tab strip
+                    if (documents.isParked(tab) || tabPane.getTabs().contains(tab)) {
+                        continue;
+                    }
+                    documents.remove(tab);
+                    pendingTabs.remove(tab);
+                    zipEntries.remove(tab);
+                    if (tab.getContent() instanceof FollowView) {
+                        ((FollowView) tab.getContent()).close();
+                    } else if (tab.getContent() instanceof HexView) {
+                        ((HexView) tab.getContent()).close();
+                    } else if (tab.getContent() instanceof PagedTextView) {
+                        ((PagedTextView) tab.getContent()).close();
+                    }
+                    prefetchedContent.remove(tab);
+                    prefetchFailed.remove(tab);
+                    if (prefetching.remove(tab)) {
+                        prefetchSessionTabs();
+                    }
+                    // Closed tabs take their words out of completion
+                    DocumentView view = getDocumentView(tab);
+                    if (view != null) {
+                        view.detachWordIndex();
+                    }
+                    Platform.runLater(this::fillTabStrip);
+                }
+            }
+            scheduleSessionSave();
+        });
+        tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            if (newTab != null) {
+                documents.used(newTab);
+            }
+            if (newTab != null && pendingTabs.containsKey(newTab)) {
+                loadPendingTab(newTab);
+            }
+            scheduleSessionSave();
+        });
+        // Ctrl+Tab goes through the switcher so parked documents are included
+        editorPane.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() == KeyCode.TAB && e.isShortcutDown()) {
+                showQuickSwitcher(true);
+                e.consume();
+            }
+        });
     }
 
     private void setupFileChooser() {
@@ -413,6 +704,7 @@ public class TabbedTextEditor extends Application {
                 new FileChooser.ExtensionFilter("XML Files", "*.xml"),
                 new FileChooser.ExtensionFilter("Markdown Files", "*.md"),
                 new FileChooser.ExtensionFilter("RTF Files", "*.rtf"),
+                new FileChooser.ExtensionFilter("Compressed Files", "*.gz", "*.zip"),
                 new FileChooser.ExtensionFilter("All Files", "*.*")
         );
     }
@@ -427,6 +719,17 @@ public class TabbedTextEditor extends Application {
         openItem.setAccelerator(new KeyCodeCombination(KeyCode.O, KeyCombination.CONTROL_DOWN));
         openItem.setOnAction(e -> openFile());
 
+        MenuItem openFolderItem = new MenuItem("Open Folder...");
+        openFolderItem.setOnAction(e -> openFolder());
+
+        MenuItem quickOpenItem = new MenuItem("Quick Open...");
+        quickOpenItem.setAccelerator(new KeyCodeCombination(KeyCode.O,
+                KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        quickOpenItem.setOnAction(e -> showQuickOpen());
+
+        MenuItem followItem = new MenuItem("Follow File...");
+        followItem.setOnAction(e -> followFile());
+
         MenuItem saveItem = new MenuItem("Save");
         saveItem.setAccelerator(new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN));
         saveItem.setOnAction(e -> saveFile());
@@ -448,10 +751,11 @@ public class TabbedTextEditor extends Application {
         exitItem.setOnAction(e -> {
             saveRecentFiles();
             saveSettings();
+            saveSession();
             System.exit(0);
         });
 
-        fileMenu.getItems().addAll(newItem, openItem, saveItem, saveAsItem,
+        fileMenu.getItems().addAll(newItem, openItem, openFolderItem, quickOpenItem, followItem, saveItem, saveAsItem,
                 new SeparatorMenuItem(), closeItem, homeItem,
                 new SeparatorMenuItem(), exitItem);
 
@@ -460,13 +764,56 @@ public class TabbedTextEditor extends Application {
         findItem.setAccelerator(new KeyCodeCombination(KeyCode.F, KeyCombination.CONTROL_DOWN));
         findItem.setOnAction(e -> showAdvancedFindReplaceDialog());
 
-        editMenu.getItems().addAll(findItem);
+        Menu linesMenu = new Menu("Lines");
+        for (LineOperations.Order order : LineOperations.Order.values()) {
+            MenuItem sortItem = new MenuItem(order.label);
+            sortItem.setOnAction(e -> transformLines(order.label, lines -> lines.sorted(order)));
+            linesMenu.getItems().add(sortItem);
+        }
+        MenuItem distinctItem = new MenuItem("Remove Duplicate Lines");
+        distinctItem.setOnAction(e -> transformLines("Remove Duplicate Lines", LineOperations::distinct));
+        MenuItem keepMatchingItem = new MenuItem("Keep Lines Matching...");
+        keepMatchingItem.setOnAction(e -> filterLines(true));
+        MenuItem removeMatchingItem = new MenuItem("Remove Lines Matching...");
+        removeMatchingItem.setOnAction(e -> filterLines(false));
+        MenuItem reverseItem = new MenuItem("Reverse Lines");
+        reverseItem.setOnAction(e -> transformLines("Reverse Lines", LineOperations::reversed));
+        MenuItem shuffleItem = new MenuItem("Shuffle Lines");
+        shuffleItem.setOnAction(e -> transformLines("Shuffle Lines", LineOperations::shuffled));
+        linesMenu.getItems().addAll(new SeparatorMenuItem(), distinctItem, keepMatchingItem, removeMatchingItem,
+                new SeparatorMenuItem(), reverseItem, shuffleItem);
+
+        MenuItem matchingBracketItem = new MenuItem("Go to Matching Bracket");
+        matchingBracketItem.setAccelerator(new KeyCodeCombination(KeyCode.BACK_SLASH,
+                KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        matchingBracketItem.setOnAction(e -> goToMatchingBracket(false));
+        MenuItem selectBracketItem = new MenuItem("Select to Matching Bracket");
+        selectBracketItem.setOnAction(e -> goToMatchingBracket(true));
+
+        MenuItem completeWordItem = new MenuItem("Complete Word");
+        completeWordItem.setAccelerator(new KeyCodeCombination(KeyCode.SPACE, KeyCombination.CONTROL_DOWN));
+        completeWordItem.setOnAction(e -> {
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                view.completeWord();
+            }
+        });
+
+        editMenu.getItems().addAll(findItem, linesMenu, new SeparatorMenuItem(),
+                matchingBracketItem, selectBracketItem, new SeparatorMenuItem(), completeWordItem);
 
         Menu formatMenu = new Menu("Format");
         MenuItem fontItem = new MenuItem("Font...");
         fontItem.setOnAction(e -> showFontDialog());
 
-        formatMenu.getItems().addAll(fontItem);
+        MenuItem formatDocumentItem = new MenuItem("Format Document");
+        formatDocumentItem.setAccelerator(new KeyCodeCombination(KeyCode.F,
+                KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        formatDocumentItem.setOnAction(e -> formatDocument(false));
+        MenuItem minifyItem = new MenuItem("Minify");
+        minifyItem.setOnAction(e -> formatDocument(true));
+
+        formatMenu.getItems().addAll(fontItem, new SeparatorMenuItem(), formatDocumentItem, minifyItem);
 
         Menu viewMenu = new Menu("View");
         CheckMenuItem darkModeItem = new CheckMenuItem("Dark Mode");
@@ -475,7 +822,60 @@ public class TabbedTextEditor extends Application {
             darkMode = darkModeItem.isSelected();
             applyCurrentTheme(rootPane.getScene());
         });
-        viewMenu.getItems().addAll(darkModeItem);
+
+        CheckMenuItem minimapItem = new CheckMenuItem("Show Minimap");
+        minimapItem.setSelected(showMinimap);
+        minimapItem.setOnAction(e -> {
+            showMinimap = minimapItem.isSelected();
+            for (Tab tab : documents.mostRecentFirst()) {
+                if (tab.getContent() instanceof DocumentView) {
+                    ((DocumentView) tab.getContent()).setMinimapVisible(showMinimap);
+                }
+            }
+        });
+
+        MenuItem foldItem = new MenuItem("Fold");
+        foldItem.setAccelerator(new KeyCodeCombination(KeyCode.OPEN_BRACKET,
+                KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        foldItem.setOnAction(e -> {
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                view.foldAtCaret();
+            }
+        });
+        MenuItem unfoldItem = new MenuItem("Unfold");
+        unfoldItem.setAccelerator(new KeyCodeCombination(KeyCode.CLOSE_BRACKET,
+                KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN));
+        unfoldItem.setOnAction(e -> {
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                view.unfoldAtCaret();
+            }
+        });
+        MenuItem foldAllItem = new MenuItem("Fold All");
+        foldAllItem.setOnAction(e -> {
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                view.foldAll();
+            }
+        });
+        MenuItem unfoldAllItem = new MenuItem("Unfold All");
+        unfoldAllItem.setOnAction(e -> {
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                view.unfoldAll();
+            }
+        });
+        MenuItem compareTabItem = new MenuItem("Compare with Tab...");
+        compareTabItem.setOnAction(e -> compareWithTab());
+        MenuItem compareSavedItem = new MenuItem("Compare with Saved File");
+        compareSavedItem.setOnAction(e -> compareWithSavedFile());
+        MenuItem goToDocumentItem = new MenuItem("Go to Document...");
+        goToDocumentItem.setAccelerator(new KeyCodeCombination(KeyCode.P, KeyCombination.CONTROL_DOWN));
+        goToDocumentItem.setOnAction(e -> showQuickSwitcher(false));
+        viewMenu.getItems().addAll(darkModeItem, minimapItem, new SeparatorMenuItem(),
+                foldItem, unfoldItem, foldAllItem, unfoldAllItem, new SeparatorMenuItem(),
+                compareTabItem, compareSavedItem, new SeparatorMenuItem(), goToDocumentItem);
 
         Menu helpMenu = new Menu("Help");
         MenuItem aboutItem = new MenuItem("About");
@@ -534,55 +934,44 @@ public class TabbedTextEditor extends Application {
             }
         });
 
+        // Styles apply to the selection, or to all text if nothing is selected
         boldBtn.setOnAction(e -> {
-            TextArea textArea = getCurrentTextArea();
-            if (textArea != null) {
-                Font currentFont = textArea.getFont();
-                boolean isBold = currentFont.getStyle().toLowerCase().contains("bold");
-                textArea.setFont(Font.font(
-                        currentFont.getFamily(),
-                        isBold ? FontWeight.NORMAL : FontWeight.BOLD,
-                        currentFont.getSize()
-                ));
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                boolean bold = view.getSelectionStyle().bold;
+                view.restyleSelection(style -> style.withBold(!bold));
             }
         });
 
         italicBtn.setOnAction(e -> {
-            TextArea textArea = getCurrentTextArea();
-            if (textArea != null) {
-                Font currentFont = textArea.getFont();
-                boolean isItalic = currentFont.getStyle().toLowerCase().contains("italic");
-                textArea.setFont(Font.font(
-                        currentFont.getFamily(),
-                        currentFont.getStyle().toLowerCase().contains("bold") ? FontWeight.BOLD : FontWeight.NORMAL,
-                        isItalic ? FontPosture.REGULAR : FontPosture.ITALIC,
-                        currentFont.getSize()
-                ));
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                boolean italic = view.getSelectionStyle().italic;
+                view.restyleSelection(style -> style.withItalic(!italic));
             }
         });
 
         underlineBtn.setOnAction(e -> {
-            TextArea textArea = getCurrentTextArea();
-            if (textArea != null) {
-                if (textArea.getStyle().contains("-fx-underline: true")) {
-                    textArea.setStyle(textArea.getStyle().replace("-fx-underline: true", ""));
-                } else {
-                    textArea.setStyle(textArea.getStyle() + "-fx-underline: true;");
-                }
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                boolean underline = view.getSelectionStyle().underline;
+                view.restyleSelection(style -> style.withUnderline(!underline));
             }
         });
 
         textColorPicker.setOnAction(e -> {
-            TextArea textArea = getCurrentTextArea();
-            if (textArea != null) {
-                textArea.setStyle(textArea.getStyle() + "-fx-text-fill: " + toHexString(textColorPicker.getValue()) + ";");
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                Color color = textColorPicker.getValue();
+                view.restyleSelection(style -> style.withForeground(color));
             }
         });
 
         bgColorPicker.setOnAction(e -> {
-            TextArea textArea = getCurrentTextArea();
-            if (textArea != null) {
-                textArea.setStyle(textArea.getStyle() + "-fx-control-inner-background: " + toHexString(bgColorPicker.getValue()) + ";");
+            DocumentView view = getCurrentDocumentView();
+            if (view != null) {
+                Color color = bgColorPicker.getValue();
+                view.restyleSelection(style -> style.withBackground(color));
             }
         });
 
@@ -616,10 +1005,10 @@ public class TabbedTextEditor extends Application {
     }
 
     private void createNewTab() {
-        TextArea textArea = new TextArea();
-        textArea.setFont(Font.font("Segoe UI", 12));
+        DocumentView view = createDocumentView("");
+        TextArea textArea = view.getTextArea();
 
-        Tab tab = new Tab("Untitled " + untitledCount++, textArea);
+        Tab tab = new Tab("Untitled " + untitledCount++, view);
         tab.setUserData(null);
 
         tab.setOnCloseRequest(e -> {
@@ -628,11 +1017,33 @@ public class TabbedTextEditor extends Application {
             }
         });
 
-        tabPane.getTabs().add(tab);
-        tabPane.getSelectionModel().select(tab);
+        addTab(tab, null);
         textArea.requestFocus();
     }
 
+    private DocumentView createDocumentView(String content) {
+        DocumentView view = new DocumentView(content);
+        view.setMinimapVisible(showMinimap);
+        view.attachWordIndex(wordIndex);
+        TextArea textArea = view.getTextArea();
+        textArea.caretPositionProperty().addListener(o -> scheduleSessionSave());
+        textArea.scrollTopProperty().addListener(o -> scheduleSessionSave());
+        textArea.scrollLeftProperty().addListener(o -> scheduleSessionSave());
+        textArea.fontProperty().addListener(o -> scheduleSessionSave());
+        return view;
+    }
+
+    private Tab createFileTab(File file) {
+        Tab tab = new Tab(file.getName());
+        tab.setUserData(file);
+        tab.setOnCloseRequest(e -> {
+            if (!promptToSave(tab)) {
+                e.consume();
+            }
+        });
+        return tab;
+    }
+
     private void openFile() {
         File file = fileChooser.showOpenDialog(null);
         if (file != null) {
@@ -640,31 +1051,81 @@ public class TabbedTextEditor extends Application {
         }
     }
 
+    private void openFolder() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Open Folder");
+        File folder = chooser.showDialog(rootPane.getScene().getWindow());
+        if (folder != null) {
+            workspace.setFolder(folder.toPath());
+            if (!rootPane.getChildren().contains(editorPane)) {
+                switchToEditor();
+            }
+        }
+    }
+
+    private void showQuickOpen() {
+        if (workspace.getIndex() == null) {
+            showAlert("Quick Open", "Open a folder first to find files in it.");
+            return;
+        }
+        QuickOpen quickOpen = new QuickOpen(rootPane.getScene().getWindow(), workspace.getIndex(), this::openFile);
+        applyCurrentTheme(quickOpen.getScene());
+        quickOpen.show();
+    }
+
+    // Opens a read-only tab that shows lines as they are added to the file,
+    // for logs that keep growing
+    private void followFile() {
+        File file = fileChooser.showOpenDialog(null);
+        if (file == null) {
+            return;
+        }
+        Tab tab = new Tab(file.getName() + " (following)", new FollowView(file.toPath()));
+        tab.setUserData(null);
+        addTab(tab, null);
+    }
+
     private void openFile(File file) {
         try {
-            String content = new String(Files.readAllBytes(file.toPath()));
-
-            for (Tab tab : tabPane.getTabs()) {
-                if (file.equals(tab.getUserData())) {
-                    tabPane.getSelectionModel().select(tab);
-                    return;
-                }
+            // Several entries of one zip can be open, so a zip is never
+            // looked up as a whole
+            if (CompressedFiles.isZip(file.toPath())) {
+                openZipEntry(file);
+                return;
             }
+        } catch (IOException e) {
+            showAlert("Error", "Could not open file: " + e.getMessage());
+            return;
+        }
+        Tab existing = documents.find(file);
+        if (existing != null) {
+            showTab(existing);
+            return;
+        }
+        try {
+            if (CompressedFiles.isGzip(file.toPath())) {
+                openCompressed(file, null);
+                return;
+            }
+            // Binary files are shown as hex instead of being decoded as text
+            if (BinaryFile.looksBinary(file.toPath())) {
+                Tab tab = createFileTab(file);
+                tab.setContent(new HexView(new BinaryFile(file.toPath())));
+                addTab(tab, file);
+                addToRecentDocuments(file);
+                return;
+            }
+            RichTextFiles.Content content = RichTextFiles.read(file.toPath());
 
-            TextArea textArea = new TextArea(content);
-            textArea.setFont(Font.font("Segoe UI", 12));
-
-            Tab tab = new Tab(file.getName(), textArea);
-            tab.setUserData(file);
+            DocumentView view = createDocumentView(content.text);
+            view.setStyleRuns(content.styles);
+            view.setLanguage(file.getName());
+            TextArea textArea = view.getTextArea();
 
-            tab.setOnCloseRequest(e -> {
-                if (!promptToSave(tab)) {
-                    e.consume();
-                }
-            });
+            Tab tab = createFileTab(file);
+            tab.setContent(view);
 
-            tabPane.getTabs().add(tab);
-            tabPane.getSelectionModel().select(tab);
+            addTab(tab, file);
             textArea.requestFocus();
 
             addToRecentDocuments(file);
@@ -673,9 +1134,97 @@ public class TabbedTextEditor extends Application {
         }
     }
 
+    private void openZipEntry(File file) throws IOException {
+        List<String> entries = CompressedFiles.zipEntries(file.toPath());
+        if (entries.isEmpty()) {
+            showAlert("Open", file.getName() + " has no files in it.");
+            return;
+        }
+        String entry = entries.get(0);
+        if (entries.size() > 1) {
+            ChoiceDialog<String> dialog = new ChoiceDialog<>(entry, entries);
+            dialog.setTitle("Open from " + file.getName());
+            dialog.setHeaderText("Choose a file to open");
+            Optional<String> chosen = dialog.showAndWait();
+            if (!chosen.isPresent()) {
+                return;
+            }
+            entry = chosen.get();
+        }
+        for (Map.Entry<Tab, String> open : zipEntries.entrySet()) {
+            if (open.getValue().equals(entry) && file.equals(open.getKey().getUserData())) {
+                showTab(open.getKey());
+                return;
+            }
+        }
+        openCompressed(file, entry);
+    }
+
+    // The tab opens at once and gets its content when inflating is done;
+    // large text is shown read-only a page at a time, and binary content as
+    // hex, from a temporary copy
+    private void openCompressed(File file, String entry) {
+        Path path = file.toPath();
+        String name = CompressedFiles.innerName(path, entry);
+        Tab tab = createFileTab(file);
+        tab.setContent(new StackPane(new Label("Decompressing " + name + "...")));
+        if (entry != null) {
+            tab.setText(file.getName() + " \u203a " + name);
+            zipEntries.put(tab, entry);
+        }
+        // Entries of one zip share its file, so only .gz tabs are found by it
+        addTab(tab, entry == null ? file : null);
+        addToRecentDocuments(file);
+        decompressor.execute(() -> {
+            try {
+                CompressedFiles.Inflated inflated = CompressedFiles.inflate(path, entry);
+                Platform.runLater(() -> showInflated(tab, name, inflated));
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    tabPane.getTabs().remove(tab);
+                    documents.remove(tab);
+                    zipEntries.remove(tab);
+                    showAlert("Error", "Could not open file: " + e.getMessage());
+                });
+            }
+        });
+    }
+
+    private void showInflated(Tab tab, String name, CompressedFiles.Inflated inflated) {
+        if (!documents.contains(tab)) {
+            // Closed while inflating
+            if (inflated.spilled != null) {
+                try {
+                    Files.deleteIfExists(inflated.spilled);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return;
+        }
+        if (inflated.spilled != null) {
+            try {
+                BinaryFile spilled = BinaryFile.temporary(inflated.spilled);
+                tab.setContent(inflated.binary ? new HexView(spilled) : new PagedTextView(spilled));
+            } catch (IOException e) {
+                showAlert("Error", "Could not open file: " + e.getMessage());
+            }
+            return;
+        }
+        DocumentView view = createDocumentView(inflated.text);
+        view.setLanguage(name);
+        tab.setContent(view);
+        if (tab == tabPane.getSelectionModel().getSelectedItem()) {
+            view.getTextArea().requestFocus();
+        }
+    }
+
+    // Followed files are only read; saving the lines shown would cut the file
     private void saveFile() {
         Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null) {
+        if (currentTab != null && currentTab.getContent() instanceof HexView) {
+            saveBytes((HexView) currentTab.getContent());
+        } else if (getDocumentView(currentTab) != null) {
             File file = (File) currentTab.getUserData();
             if (file != null) {
                 saveToFile(currentTab, file);
@@ -687,12 +1236,22 @@ public class TabbedTextEditor extends Application {
 
     private void saveFileAs() {
         Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null) {
+        if (getDocumentView(currentTab) != null) {
             File file = fileChooser.showSaveDialog(null);
             if (file != null) {
+                String entry = zipEntryFor(currentTab, file);
                 saveToFile(currentTab, file);
                 currentTab.setUserData(file);
-                currentTab.setText(file.getName());
+                if (entry != null) {
+                    zipEntries.put(currentTab, entry);
+                    currentTab.setText(file.getName() + " \u203a " + entry);
+                    documents.setFile(currentTab, null);
+                } else {
+                    zipEntries.remove(currentTab);
+                    currentTab.setText(file.getName());
+                    documents.setFile(currentTab, file);
+                }
+                getDocumentView(currentTab).setLanguage(entry != null ? entry : file.getName());
                 addToRecentDocuments(file);
             }
         }
@@ -700,16 +1259,47 @@ public class TabbedTextEditor extends Application {
 
     private void saveToFile(Tab tab, File file) {
         try {
-            TextArea textArea = (TextArea) tab.getContent();
-            Files.write(file.toPath(), textArea.getText().getBytes());
+            DocumentView view = getDocumentView(tab);
+            Font font = view.getTextArea().getFont();
+            // Compressed files keep only the text, compressed as it is written
+            if (CompressedFiles.isZip(file.toPath())) {
+                CompressedFiles.writeZipEntry(file.toPath(), zipEntryFor(tab, file), view.getFullText(),
+                        compressionLevel);
+            } else if (CompressedFiles.isGzip(file.toPath())) {
+                CompressedFiles.writeGzip(file.toPath(), view.getFullText(), compressionLevel);
+            } else {
+                RichTextFiles.write(file.toPath(), view.getFullText(), view.getFullTextStyles(),
+                        font.getFamily(), font.getSize());
+            }
         } catch (IOException e) {
             showAlert("Error", "Could not save file: " + e.getMessage());
         }
     }
 
+    // The entry a tab is saved to in a zip: the one it was opened from, or
+    // one named after the tab; null for other files
+    private String zipEntryFor(Tab tab, File file) {
+        if (!CompressedFiles.isZip(file.toPath())) {
+            return null;
+        }
+        return zipEntries.containsKey(tab) ? zipEntries.get(tab) : tab.getText();
+    }
+
+    // Only writes the changed bytes, in place
+    private boolean saveBytes(HexView view) {
+        try {
+            view.save();
+            return true;
+        } catch (IOException e) {
+            showAlert("Error", "Could not save file: " + e.getMessage());
+            return false;
+        }
+    }
+
     private boolean promptToSave(Tab tab) {
-        TextArea textArea = (TextArea) tab.getContent();
-        if (textArea.getText().isEmpty()) {
+        HexView hexView = tab.getContent() instanceof HexView ? (HexView) tab.getContent() : null;
+        TextArea textArea = getTextArea(tab);
+        if (hexView != null ? !hexView.isModified() : textArea == null || textArea.getText().isEmpty()) {
             return true;
         }
 
@@ -725,6 +1315,9 @@ public class TabbedTextEditor extends Application {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == saveButton) {
+            if (hexView != null) {
+                return saveBytes(hexView);
+            }
             File file = (File) tab.getUserData();
             if (file != null) {
                 saveToFile(tab, file);
@@ -735,6 +1328,7 @@ public class TabbedTextEditor extends Application {
                     saveToFile(tab, saveFile);
                     tab.setUserData(saveFile);
                     tab.setText(saveFile.getName());
+                    documents.setFile(tab, saveFile);
                     return true;
                 }
                 return false;
@@ -746,12 +1340,59 @@ public class TabbedTextEditor extends Application {
         }
     }
 
+    private void addTab(Tab tab, File file) {
+        documents.add(tab, file);
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+        parkExcessTabs(tab);
+    }
+
+    // Selects a document's tab, bringing it back into the strip if parked
+    private void showTab(Tab tab) {
+        if (documents.isParked(tab)) {
+            documents.unpark(tab);
+            tabPane.getTabs().add(tab);
+        }
+        tabPane.getSelectionModel().select(tab);
+        parkExcessTabs(tab);
+    }
+
+    private void parkExcessTabs(Tab keep) {
+        while (documents.shownCount() > MAX_SHOWN_TABS) {
+            Tab tab = documents.leastRecentlyShown(keep);
+            documents.park(tab);
+            tabPane.getTabs().remove(tab);
+        }
+    }
+
+    // After a tab is closed, the most recently parked ones move back in
+    private void fillTabStrip() {
+        List<Tab> parked = documents.parkedTabs();
+        for (int i = parked.size() - 1; i >= 0 && documents.shownCount() < MAX_SHOWN_TABS; i--) {
+            documents.unpark(parked.get(i));
+            tabPane.getTabs().add(parked.get(i));
+        }
+        if (tabPane.getSelectionModel().getSelectedItem() == null && !tabPane.getTabs().isEmpty()) {
+            tabPane.getSelectionModel().select(0);
+        }
+    }
+
+    private void showQuickSwitcher(boolean releaseToChoose) {
+        List<Tab> tabs = documents.mostRecentFirst();
+        if (tabs.isEmpty()) {
+            return;
+        }
+        QuickSwitcher switcher = new QuickSwitcher(rootPane.getScene().getWindow(), tabs, this::showTab);
+        applyCurrentTheme(switcher.getScene());
+        switcher.show(releaseToChoose);
+    }
+
     private void closeCurrentTab() {
         Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
         if (currentTab != null) {
             if (promptToSave(currentTab)) {
                 tabPane.getTabs().remove(currentTab);
-                if (tabPane.getTabs().isEmpty()) {
+                if (tabPane.getTabs().isEmpty() && documents.parkedTabs().isEmpty()) {
                     switchToWelcome();
                 }
             }
@@ -759,8 +1400,8 @@ public class TabbedTextEditor extends Application {
     }
 
     private void showAdvancedFindReplaceDialog() {
-        TextArea currentTextArea = getCurrentTextArea();
-        if (currentTextArea == null) {
+        DocumentView currentView = getCurrentDocumentView();
+        if (currentView == null) {
             return;
         }
 
@@ -818,8 +1459,9 @@ public class TabbedTextEditor extends Application {
         findNextBtn.setOnAction(e -> {
             String textToFind = findField.getText();
             if (!textToFind.isEmpty()) {
-                findText(currentTextArea, textToFind,
+                findText(currentView, textToFind,
                         matchCase.isSelected(), wholeWord.isSelected());
+                currentView.getMinimap().showSearchHits(textToFind, matchCase.isSelected());
             }
         });
 
@@ -827,7 +1469,7 @@ public class TabbedTextEditor extends Application {
             String textToFind = replaceFindField.getText();
             String replacement = replaceWithField.getText();
             if (!textToFind.isEmpty()) {
-                replaceText(currentTextArea, textToFind, replacement,
+                replaceText(currentView, textToFind, replacement,
                         replaceMatchCase.isSelected());
             }
         });
@@ -836,7 +1478,7 @@ public class TabbedTextEditor extends Application {
             String textToFind = replaceFindField.getText();
             String replacement = replaceWithField.getText();
             if (!textToFind.isEmpty()) {
-                replaceAllText(currentTextArea, textToFind, replacement,
+                replaceAllText(currentView, textToFind, replacement,
                         replaceMatchCase.isSelected());
             }
         });
@@ -844,40 +1486,62 @@ public class TabbedTextEditor extends Application {
         dialog.showAndWait();
     }
 
-    private void findText(TextArea textArea, String textToFind, boolean matchCase, boolean wholeWord) {
-        String content = matchCase ? textArea.getText() : textArea.getText().toLowerCase();
-        String searchText = matchCase ? textToFind : textToFind.toLowerCase();
-
-        if (wholeWord) {
-            searchText = "\\b" + searchText + "\\b";
+    // Searches the whole document, folded text included, from the end of
+    // the selection and then from the top; a match in a fold is unfolded
+    private void findText(DocumentView view, String textToFind, boolean matchCase, boolean wholeWord) {
+        String content = view.getFullText();
+        int from = view.fullTextOffset(view.getTextArea().getSelection().getEnd());
+        int index = findFrom(content, textToFind, from, matchCase, wholeWord);
+        if (index < 0) {
+            index = findFrom(content, textToFind, 0, matchCase, wholeWord);
         }
-
-        int index = content.indexOf(searchText);
         if (index >= 0) {
-            textArea.selectRange(index, index + textToFind.length());
+            view.revealFullText(index, index + textToFind.length());
         } else {
             showAlert("Not Found", "Text not found.");
         }
     }
 
-    private void replaceText(TextArea textArea, String textToFind, String replacement, boolean matchCase) {
+    private static int findFrom(String content, String textToFind, int from, boolean matchCase, boolean wholeWord) {
+        for (int index = DocumentView.indexOf(content, textToFind, from, matchCase); index >= 0;
+                index = DocumentView.indexOf(content, textToFind, index + 1, matchCase)) {
+            int end = index + textToFind.length();
+            if (!wholeWord || (index == 0 || !WordIndex.isWordChar(content.charAt(index - 1)))
+                    && (end == content.length() || !WordIndex.isWordChar(content.charAt(end)))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void replaceText(DocumentView view, String textToFind, String replacement, boolean matchCase) {
+        TextArea textArea = view.getTextArea();
         String selectedText = textArea.getSelectedText();
         if (selectedText != null
                 && ((matchCase && selectedText.equals(textToFind))
                 || (!matchCase && selectedText.equalsIgnoreCase(textToFind)))) {
             textArea.replaceSelection(replacement);
         } else {
-            findText(textArea, textToFind, matchCase, false);
+            findText(view, textToFind, matchCase, false);
         }
     }
 
-    private void replaceAllText(TextArea textArea, String textToFind, String replacement, boolean matchCase) {
-        String content = textArea.getText();
-        if (matchCase) {
-            textArea.setText(content.replace(textToFind, replacement));
-        } else {
-            textArea.setText(content.replaceAll("(?i)" + textToFind, replacement));
+    // Matches the same text Find does, folds included, and replaces it as
+    // one undoable change
+    private void replaceAllText(DocumentView view, String textToFind, String replacement, boolean matchCase) {
+        String content = view.getFullText();
+        StringBuilder result = new StringBuilder(content.length());
+        int position = 0;
+        for (int index = DocumentView.indexOf(content, textToFind, 0, matchCase); index >= 0;
+                index = DocumentView.indexOf(content, textToFind, position, matchCase)) {
+            result.append(content, position, index).append(replacement);
+            position = index + textToFind.length();
         }
+        if (result.length() == 0 && position == 0) {
+            return;
+        }
+        result.append(content, position, content.length());
+        view.setFullText(result.toString());
     }
 
     private void showFontDialog() {
@@ -939,13 +1603,254 @@ public class TabbedTextEditor extends Application {
     }
 
     private TextArea getCurrentTextArea() {
-        Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null && currentTab.getContent() instanceof TextArea) {
-            return (TextArea) currentTab.getContent();
+        return getTextArea(tabPane.getSelectionModel().getSelectedItem());
+    }
+
+    private DocumentView getCurrentDocumentView() {
+        return getDocumentView(tabPane.getSelectionModel().getSelectedItem());
+    }
+
+    private DocumentView getDocumentView(Tab tab) {
+        if (tab != null && tab.getContent() instanceof DocumentView) {
+            return (DocumentView) tab.getContent();
         }
         return null;
     }
 
+    private TextArea getTextArea(Tab tab) {
+        DocumentView view = getDocumentView(tab);
+        return view != null ? view.getTextArea() : null;
+    }
+
+    private void goToMatchingBracket(boolean select) {
+        DocumentView view = getCurrentDocumentView();
+        if (view != null && !view.goToMatchingBracket(select)) {
+            showAlert("Matching Bracket", "The caret is not at a bracket or tag.");
+        }
+    }
+
+    // Formats JSON or XML on a background thread and applies the result as
+    // one undoable change, unless the document was edited in the meantime
+    private void formatDocument(boolean minify) {
+        DocumentView view = getCurrentDocumentView();
+        if (view == null) {
+            return;
+        }
+        String title = minify ? "Minify" : "Format Document";
+        String text = view.getFullText();
+        StructuredTextFormatter.Language language = StructuredTextFormatter.Language.detect(text);
+        if (language == null) {
+            showAlert(title, "Only JSON and XML documents can be formatted.");
+            return;
+        }
+
+        StructuredTextFormatter formatter = new StructuredTextFormatter(language, minify);
+        Task<String> task = new Task<String>() {
+            @Override
+            protected String call() {
+                return formatter.apply(text, position -> {
+                    updateProgress(position, text.length());
+                    return !isCancelled();
+                });
+            }
+        };
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        progressBar.progressProperty().bind(task.progressProperty());
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle(title);
+        dialog.setHeaderText("Formatting " + language + "...");
+        dialog.getDialogPane().setContent(progressBar);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        dialog.setOnHidden(e -> task.cancel());
+
+        task.setOnSucceeded(e -> {
+            dialog.close();
+            String result = task.getValue();
+            if (result == null) {
+                return;
+            }
+            if (!view.getFullText().equals(text)) {
+                showAlert(title, "The document changed while it was being formatted.");
+            } else if (!result.equals(text)) {
+                view.setFullText(result);
+            }
+        });
+        task.setOnFailed(e -> {
+            dialog.close();
+            showAlert("Error", "Could not format document: " + task.getException().getMessage());
+        });
+        task.setOnCancelled(e -> dialog.close());
+
+        documentFormatter.execute(task);
+        dialog.show();
+    }
+
+    // Line operations work on the selected lines, or all of them, in the
+    // background; the result is applied like a formatted document
+    private void transformLines(String title, Function<LineOperations, int[]> operation) {
+        DocumentView view = getCurrentDocumentView();
+        if (view == null) {
+            return;
+        }
+        String text = view.getFullText();
+        IndexRange selection = view.getTextArea().getSelection();
+        boolean selected = selection.getLength() > 0;
+        int from = selected ? view.fullTextOffset(selection.getStart()) : 0;
+        int to = selected ? view.fullTextOffset(selection.getEnd()) : text.length();
+
+        int[] changedRange = new int[2];
+        Task<String> task = new Task<String>() {
+            @Override
+            protected String call() {
+                LineOperations lines = new LineOperations(text, from, to, this::isCancelled);
+                int[] result = operation.apply(lines);
+                if (isCancelled()) {
+                    return null;
+                }
+                String joined = lines.join(result);
+                changedRange[0] = Math.min(lines.rangeStart(), joined.length());
+                changedRange[1] = Math.max(changedRange[0], joined.length() - (text.length() - lines.rangeEnd()));
+                return joined;
+            }
+        };
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle(title);
+        dialog.setHeaderText(title + "...");
+        dialog.getDialogPane().setContent(progressBar);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        dialog.setOnHidden(e -> task.cancel());
+
+        task.setOnSucceeded(e -> {
+            dialog.close();
+            String result = task.getValue();
+            if (result == null) {
+                return;
+            }
+            if (!view.getFullText().equals(text)) {
+                showAlert(title, "The document changed while its lines were being rearranged.");
+                return;
+            }
+            if (!result.equals(text)) {
+                view.setFullText(result);
+            }
+            if (selected) {
+                view.getTextArea().selectRange(changedRange[0], changedRange[1]);
+            }
+        });
+        task.setOnFailed(e -> {
+            dialog.close();
+            showAlert("Error", "Could not rearrange lines: " + task.getException().getMessage());
+        });
+        task.setOnCancelled(e -> dialog.close());
+
+        documentFormatter.execute(task);
+        dialog.show();
+    }
+
+    private void filterLines(boolean keep) {
+        if (getCurrentDocumentView() == null) {
+            return;
+        }
+        String title = keep ? "Keep Lines Matching" : "Remove Lines Matching";
+        TextInputDialog dialog = new TextInputDialog(linePattern);
+        dialog.setTitle(title);
+        dialog.setHeaderText("Lines in which this regular expression is found");
+        dialog.setContentText("Pattern:");
+        dialog.showAndWait().ifPresent(regex -> {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                showAlert(title, "Invalid pattern: " + e.getDescription());
+                return;
+            }
+            linePattern = regex;
+            transformLines(title, lines -> lines.matching(pattern, keep));
+        });
+    }
+
+    private void compareWithTab() {
+        Tab current = tabPane.getSelectionModel().getSelectedItem();
+        DocumentView view = getDocumentView(current);
+        if (view == null) {
+            return;
+        }
+        Map<String, Tab> others = new LinkedHashMap<>();
+        for (Tab tab : documents.mostRecentFirst()) {
+            if (tab != current) {
+                String name = tab.getText();
+                for (int n = 2; others.containsKey(name); n++) {
+                    name = tab.getText() + " (" + n + ")";
+                }
+                others.put(name, tab);
+            }
+        }
+        if (others.isEmpty()) {
+            showAlert("Compare", "There is no other tab to compare with.");
+            return;
+        }
+
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(others.keySet().iterator().next(), others.keySet());
+        dialog.setTitle("Compare with Tab");
+        dialog.setHeaderText("Compare " + current.getText() + " with:");
+        dialog.showAndWait().ifPresent(name -> {
+            Tab other = others.get(name);
+            if (pendingTabs.containsKey(other)) {
+                loadPendingTab(other);
+            }
+            DocumentView otherView = getDocumentView(other);
+            if (otherView != null) {
+                String text = view.getFullText();
+                String otherText = otherView.getFullText();
+                differ.execute(() -> showComparison(LineDiff.compute(text, otherText),
+                        current.getText(), other.getText()));
+            }
+        });
+    }
+
+    private void compareWithSavedFile() {
+        Tab current = tabPane.getSelectionModel().getSelectedItem();
+        DocumentView view = getDocumentView(current);
+        if (view == null) {
+            return;
+        }
+        File file = (File) current.getUserData();
+        if (file == null) {
+            showAlert("Compare", "This document has not been saved yet.");
+            return;
+        }
+        String text = view.getFullText();
+        String entry = zipEntries.get(current);
+        differ.execute(() -> {
+            try {
+                String saved = CompressedFiles.isCompressed(file.toPath())
+                        ? CompressedFiles.readText(file.toPath(), entry)
+                        : RichTextFiles.readText(file.toPath());
+                showComparison(LineDiff.compute(saved, text), file.getName() + " (saved)", current.getText());
+            } catch (IOException e) {
+                Platform.runLater(() -> showAlert("Error", "Could not open file: " + e.getMessage()));
+            }
+        });
+    }
+
+    // Called on the compare worker once the diff is done
+    private void showComparison(LineDiff diff, String nameA, String nameB) {
+        Platform.runLater(() -> {
+            Stage stage = new Stage();
+            stage.setTitle(nameA + " \u2194 " + nameB);
+            Scene scene = new Scene(new CompareView(diff, nameA, nameB), 1000, 700);
+            applyCurrentTheme(scene);
+            stage.setScene(scene);
+            stage.initOwner(rootPane.getScene().getWindow());
+            stage.show();
+        });
+    }
+
     private void showAlert(String title, String message) {
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle(title);
@@ -978,13 +1883,6 @@ public class TabbedTextEditor extends Application {
         }
     }
 
-    private static String toHexString(Color color) {
-        int r = (int) (color.getRed() * 255);
-        int g = (int) (color.getGreen() * 255);
-        int b = (int) (color.getBlue() * 255);
-        return String.format("#%02x%02x%02x", r, g, b);
-    }
-
     public static class DocumentInfo implements Serializable {
 
         private final String fileName;
@@ -1009,4 +1907,62 @@ public class TabbedTextEditor extends Application {
             return lastModified;
         }
     }
+
+    public static class SessionTab implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final int caretPosition;
+        private final double scrollTop;
+        private final double scrollLeft;
+        private final String fontFamily;
+        private final double fontSize;
+        private final boolean bold;
+        private final boolean italic;
+
+        public SessionTab(String path, int caretPosition, double scrollTop, double scrollLeft,
+                String fontFamily, double fontSize, boolean bold, boolean italic) {
+            this.path = path;
+            this.caretPosition = caretPosition;
+            this.scrollTop = scrollTop;
+            this.scrollLeft = scrollLeft;
+            this.fontFamily = fontFamily;
+            this.fontSize = fontSize;
+            this.bold = bold;
+            this.italic = italic;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getCaretPosition() {
+            return caretPosition;
+        }
+
+        public double getScrollTop() {
+            return scrollTop;
+        }
+
+        public double getScrollLeft() {
+            return scrollLeft;
+        }
+
+        public String getFontFamily() {
+            return fontFamily;
+        }
+
+        public double getFontSize() {
+            return fontSize;
+        }
+
+        public boolean isBold() {
+            return bold;
+        }
+
+        public boolean isItalic() {
+            return italic;
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Character formatting of a run of text. Styles are interned, so equal
+ * styles are the same object and runs compare them with ==. Interning is
+ * weak: a style no run uses any more, such as one for a color tried once,
+ * leaves the table.
+ */
+package tabbedtexteditor;
+
+import javafx.scene.paint.Color;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+final class TextStyle {
+
+    private static final Map<TextStyle, WeakReference<TextStyle>> INTERNED = new WeakHashMap<>();
+
+    static final TextStyle PLAIN = of(false, false, false, null, null);
+
+    final boolean bold;
+    final boolean italic;
+    final boolean underline;
+    // Null where the document's own colors apply
+    final Color foreground;
+    final Color background;
+    private final int hash;
+
+    private TextStyle(boolean bold, boolean italic, boolean underline, Color foreground, Color background) {
+        this.bold = bold;
+        this.italic = italic;
+        this.underline = underline;
+        this.foreground = foreground;
+        this.background = background;
+        hash = Objects.hash(bold, italic, underline, foreground, background);
+    }
+
+    static synchronized TextStyle of(boolean bold, boolean italic, boolean underline,
+            Color foreground, Color background) {
+        TextStyle style = new TextStyle(bold, italic, underline, foreground, background);
+        WeakReference<TextStyle> interned = INTERNED.get(style);
+        TextStyle existing = interned != null ? interned.get() : null;
+        if (existing != null) {
+            return existing;
+        }
+        INTERNED.put(style, new WeakReference<>(style));
+        return style;
+    }
+
+    TextStyle withBold(boolean bold) {
+        return of(bold, italic, underline, foreground, background);
+    }
+
+    TextStyle withItalic(boolean italic) {
+        return of(bold, italic, underline, foreground, background);
+    }
+
+    TextStyle withUnderline(boolean underline) {
+        return of(bold, italic, underline, foreground, background);
+    }
+
+    TextStyle withForeground(Color foreground) {
+        return of(bold, italic, underline, foreground, background);
+    }
+
+    TextStyle withBackground(Color background) {
+        return of(bold, italic, underline, foreground, background);
+    }
+
+    // Whether the text is drawn differently from the text area's own
+    boolean changesGlyphs() {
+        return bold || italic || foreground != null || background != null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TextStyle)) {
+            return false;
+        }
+        TextStyle style = (TextStyle) other;
+        return bold == style.bold && italic == style.italic && underline == style.underline
+                && Objects.equals(foreground, style.foreground) && Objects.equals(background, style.background);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
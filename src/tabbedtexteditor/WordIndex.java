@@ -0,0 +1,239 @@
+/*
+ * Words of all open documents and how often they occur, for completion.
+ * Words are numbered once; documents report counts by number, and prefix
+ * lookups binary search an array of numbers sorted by word. Words no
+ * document has any more are dropped and their numbers given out again.
+ */
+package tabbedtexteditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class WordIndex {
+
+    static final int MIN_WORD_LENGTH = 3;
+    static final int MAX_WORD_LENGTH = 64;
+    // New words wait in a small unsorted tail until there are this many
+    private static final int MAX_UNSORTED = 256;
+    // Unused words are dropped once there are this many, and they are a
+    // quarter of the index
+    private static final int MIN_UNUSED = 1024;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] words = new String[1024];
+    private int[] totals = new int[1024];
+    private int wordCount;
+    private int[] sorted = new int[0];
+    private int[] unsorted = new int[MAX_UNSORTED];
+    private int unsortedCount;
+    private int[] freeIds = new int[0];
+    private int freeCount;
+    // Words with a total of zero
+    private int unused;
+
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    static boolean isIndexed(CharSequence text, int start, int end) {
+        int length = end - start;
+        return length >= MIN_WORD_LENGTH && length <= MAX_WORD_LENGTH && !Character.isDigit(text.charAt(start));
+    }
+
+    // Suits a few words at a time, as edits bring them
+    int idOf(String word) {
+        Integer id = ids.get(word);
+        if (id != null) {
+            return id;
+        }
+        int newId = add(word);
+        if (unsortedCount == MAX_UNSORTED) {
+            mergeUnsorted();
+        }
+        unsorted[unsortedCount++] = newId;
+        return newId;
+    }
+
+    /*
+     * Ids of a whole document's words, which come sorted so that the new
+     * ones go into the sorted array in a single merge rather than through
+     * the tail, where many new words would cost a merge every 256.
+     */
+    int[] idsOf(String[] sortedWords) {
+        int[] result = new int[sortedWords.length];
+        int[] added = new int[sortedWords.length];
+        int addedCount = 0;
+        for (int i = 0; i < sortedWords.length; i++) {
+            Integer id = ids.get(sortedWords[i]);
+            if (id == null) {
+                id = add(sortedWords[i]);
+                added[addedCount++] = id;
+            }
+            result[i] = id;
+        }
+        merge(added, addedCount);
+        return result;
+    }
+
+    void adjust(int id, int delta) {
+        int before = totals[id];
+        totals[id] += delta;
+        if (before > 0 && totals[id] <= 0) {
+            unused++;
+        } else if (before <= 0 && totals[id] > 0) {
+            unused--;
+        }
+    }
+
+    private int add(String word) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (wordCount == words.length) {
+                words = Arrays.copyOf(words, wordCount * 2);
+                totals = Arrays.copyOf(totals, wordCount * 2);
+            }
+            id = wordCount++;
+        }
+        words[id] = word;
+        ids.put(word, id);
+        // Unused until the caller adjusts its total
+        unused++;
+        return id;
+    }
+
+    /*
+     * The most frequent words starting with prefix, most frequent first.
+     * Only the words in the prefix's range of the sorted array are looked
+     * at, keeping the best `limit` of them in a small ranked array.
+     */
+    List<String> complete(String prefix, int limit) {
+        if (unused >= MIN_UNUSED && unused * 4 > wordCount - freeCount) {
+            dropUnused();
+        }
+        int[] best = new int[limit];
+        int found = 0;
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        for (int i = lowerBound(prefix); i < to; i++) {
+            found = rank(best, found, sorted[i], prefix);
+        }
+        for (int i = 0; i < unsortedCount; i++) {
+            if (words[unsorted[i]].startsWith(prefix)) {
+                found = rank(best, found, unsorted[i], prefix);
+            }
+        }
+        List<String> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(words[best[i]]);
+        }
+        return result;
+    }
+
+    private int rank(int[] best, int found, int id, String prefix) {
+        if (totals[id] <= 0 || words[id].length() == prefix.length()) {
+            return found;
+        }
+        int position = found;
+        while (position > 0 && isBetter(id, best[position - 1])) {
+            position--;
+        }
+        if (position == best.length) {
+            return found;
+        }
+        int moved = Math.min(found, best.length - 1) - position;
+        System.arraycopy(best, position, best, position + 1, moved);
+        best[position] = id;
+        return Math.min(found + 1, best.length);
+    }
+
+    private boolean isBetter(int id, int other) {
+        return totals[id] != totals[other] ? totals[id] > totals[other] : words[id].compareTo(words[other]) < 0;
+    }
+
+    // Index of the first sorted word not less than key
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[sorted[mid]].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void mergeUnsorted() {
+        Integer[] tail = new Integer[unsortedCount];
+        for (int i = 0; i < unsortedCount; i++) {
+            tail[i] = unsorted[i];
+        }
+        Arrays.sort(tail, (a, b) -> words[a].compareTo(words[b]));
+        for (int i = 0; i < unsortedCount; i++) {
+            unsorted[i] = tail[i];
+        }
+        merge(unsorted, unsortedCount);
+        unsortedCount = 0;
+    }
+
+    // Merges the first count of the given ids, sorted by word, into the
+    // sorted array
+    private void merge(int[] added, int count) {
+        if (count == 0) {
+            return;
+        }
+        int[] merged = new int[sorted.length + count];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted.length && j < count) {
+            merged[k++] = words[sorted[i]].compareTo(words[added[j]]) <= 0 ? sorted[i++] : added[j++];
+        }
+        while (i < sorted.length) {
+            merged[k++] = sorted[i++];
+        }
+        while (j < count) {
+            merged[k++] = added[j++];
+        }
+        sorted = merged;
+    }
+
+    // Done between edits, when no id is waiting for its first count
+    private void dropUnused() {
+        int kept = 0;
+        for (int id : sorted) {
+            if (totals[id] > 0) {
+                sorted[kept++] = id;
+            } else {
+                free(id);
+            }
+        }
+        sorted = Arrays.copyOf(sorted, kept);
+        kept = 0;
+        for (int i = 0; i < unsortedCount; i++) {
+            if (totals[unsorted[i]] > 0) {
+                unsorted[kept++] = unsorted[i];
+            } else {
+                free(unsorted[i]);
+            }
+        }
+        unsortedCount = kept;
+        unused = 0;
+    }
+
+    private void free(int id) {
+        ids.remove(words[id]);
+        words[id] = null;
+        totals[id] = 0;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(64, freeCount * 2));
+        }
+        freeIds[freeCount++] = id;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Background threads shared by the editor's views
+ */
+package tabbedtexteditor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+final class Workers {
+
+    private Workers() {
+    }
+
+    // Daemon threads so background work never keeps the application alive
+    static ExecutorService newSingleThreadExecutor(String name, int priority) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
+    }
+}
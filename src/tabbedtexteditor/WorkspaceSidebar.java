@@ -0,0 +1,204 @@
+/*
+ * Folder tree beside the tabs. A folder's entries are only listed when it
+ * is first expanded, on a background thread, and listed again when the
+ * workspace's file index reports a change in it. The index itself covers
+ * the whole tree and serves quick open.
+ */
+package tabbedtexteditor;
+
+import javafx.application.Platform;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.BorderPane;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+class WorkspaceSidebar extends BorderPane {
+
+    private static final double WIDTH = 240;
+    private static final ExecutorService LISTER =
+            Workers.newSingleThreadExecutor("folder-listing", Thread.NORM_PRIORITY);
+
+    private final TreeView<Path> tree = new TreeView<>();
+    private final Consumer<File> onOpen;
+    private FileNameIndex index;
+
+    WorkspaceSidebar(Consumer<File> onOpen) {
+        this.onOpen = onOpen;
+        tree.setCellFactory(view -> new PathCell());
+        tree.setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2) {
+                openSelected();
+            }
+        });
+        tree.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER) {
+                openSelected();
+            }
+        });
+        setCenter(tree);
+        setPrefWidth(WIDTH);
+        setVisible(false);
+        setManaged(false);
+    }
+
+    void setFolder(Path folder) {
+        if (index != null) {
+            index.close();
+        }
+        index = new FileNameIndex(folder, dir -> Platform.runLater(() -> reload(dir)));
+        FolderItem root = new FolderItem(folder);
+        tree.setRoot(root);
+        root.setExpanded(true);
+        setVisible(true);
+        setManaged(true);
+    }
+
+    Path getFolder() {
+        return index != null ? index.getRoot() : null;
+    }
+
+    FileNameIndex getIndex() {
+        return index;
+    }
+
+    private void openSelected() {
+        TreeItem<Path> item = tree.getSelectionModel().getSelectedItem();
+        if (item != null && !(item instanceof FolderItem) && item.getValue() != null) {
+            onOpen.accept(item.getValue().toFile());
+        }
+    }
+
+    // Only folders already listed are listed again
+    private void reload(Path dir) {
+        if (!(tree.getRoot() instanceof FolderItem)) {
+            return;
+        }
+        FolderItem item = (FolderItem) tree.getRoot();
+        if (!dir.startsWith(item.getValue())) {
+            return;
+        }
+        for (Path name : item.getValue().relativize(dir)) {
+            if (name.toString().isEmpty()) {
+                break;
+            }
+            item = item.child(item.getValue().resolve(name));
+            if (item == null) {
+                return;
+            }
+        }
+        if (item.loaded) {
+            item.load();
+        }
+    }
+
+    private static final class FolderItem extends TreeItem<Path> {
+
+        private boolean loaded;
+        private int listing;
+
+        FolderItem(Path folder) {
+            super(folder);
+            // Placeholder so the folder shows as expandable before it is listed
+            getChildren().add(new TreeItem<>());
+            expandedProperty().addListener((obs, was, expanded) -> {
+                if (expanded && !loaded) {
+                    loaded = true;
+                    load();
+                }
+            });
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+
+        FolderItem child(Path path) {
+            for (TreeItem<Path> item : getChildren()) {
+                if (item instanceof FolderItem && path.equals(item.getValue())) {
+                    return (FolderItem) item;
+                }
+            }
+            return null;
+        }
+
+        void load() {
+            int current = ++listing;
+            Path folder = getValue();
+            LISTER.execute(() -> {
+                List<Path> entries = list(folder);
+                Platform.runLater(() -> {
+                    if (current == listing) {
+                        show(entries);
+                    }
+                });
+            });
+        }
+
+        // Subfolders already shown are kept, with whatever is expanded in them
+        private void show(List<Path> entries) {
+            Map<Path, TreeItem<Path>> existing = new HashMap<>();
+            for (TreeItem<Path> item : getChildren()) {
+                if (item.getValue() != null) {
+                    existing.put(item.getValue(), item);
+                }
+            }
+            List<TreeItem<Path>> items = new ArrayList<>(entries.size());
+            for (Path entry : entries) {
+                TreeItem<Path> item = existing.get(entry);
+                if (item == null) {
+                    item = Files.isDirectory(entry) ? new FolderItem(entry) : new TreeItem<>(entry);
+                }
+                items.add(item);
+            }
+            getChildren().setAll(items);
+        }
+
+        // Folders first, then by name; hidden entries are left out as in the index
+        private static List<Path> list(Path folder) {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+                for (Path entry : stream) {
+                    if (!entry.getFileName().toString().startsWith(".")) {
+                        entries.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            Map<Path, Boolean> directories = new HashMap<>();
+            for (Path entry : entries) {
+                directories.put(entry, Files.isDirectory(entry));
+            }
+            entries.sort(Comparator.comparing((Path entry) -> !directories.get(entry))
+                    .thenComparing(entry -> entry.getFileName().toString(), String.CASE_INSENSITIVE_ORDER));
+            return entries;
+        }
+    }
+
+    private static final class PathCell extends TreeCell<Path> {
+
+        @Override
+        protected void updateItem(Path path, boolean empty) {
+            super.updateItem(path, empty);
+            if (empty || path == null) {
+                setText(null);
+            } else {
+                setText(path.getFileName() != null ? path.getFileName().toString() : path.toString());
+            }
+        }
+    }
+}
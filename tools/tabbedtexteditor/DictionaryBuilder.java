@@ -0,0 +1,172 @@
+/*
+ * Builds the spell checker's dictionary file from a sorted word list, one
+ * word per line. It is a build tool, kept out of src so it does not ship;
+ * it shares the package to use SpellDictionary's format constants. From
+ * the project folder, after changing dictionary/english.words:
+ *
+ *     javac -d build/tools -sourcepath src tools/tabbedtexteditor/DictionaryBuilder.java
+ *     java -cp build/tools tabbedtexteditor.DictionaryBuilder dictionary/english.words src/tabbedtexteditor/english.dawg
+ *
+ * Words are added in order to a trie whose finished branches are merged
+ * with equal ones already seen (Daciuk et al.), which leaves the minimal
+ * word graph. It is written out in SpellDictionary's format.
+ */
+package tabbedtexteditor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class DictionaryBuilder {
+
+    private static final class Node {
+
+        final List<Character> labels = new ArrayList<>();
+        final List<Node> children = new ArrayList<>();
+        boolean isFinal;
+        int id = -1;
+
+        String signature() {
+            StringBuilder signature = new StringBuilder(isFinal ? "1" : "0");
+            for (int i = 0; i < labels.size(); i++) {
+                signature.append(labels.get(i)).append(children.get(i).id).append(',');
+            }
+            return signature.toString();
+        }
+    }
+
+    private final Node root = new Node();
+    private final Map<String, Node> register = new HashMap<>();
+    // The path of the last word added; nodes past the shared prefix with
+    // the next word are final and can be merged
+    private final List<Node> path = new ArrayList<>();
+    private String previous = "";
+    private int nextId;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: DictionaryBuilder <word list> <dictionary file>");
+            System.exit(1);
+        }
+        DictionaryBuilder builder = new DictionaryBuilder();
+        String last = null;
+        for (String word : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            word = word.trim();
+            if (word.isEmpty() || word.equals(last)) {
+                continue;
+            }
+            if (last != null && word.compareTo(last) < 0) {
+                throw new IllegalArgumentException("Word list is not sorted at " + word);
+            }
+            for (int i = 0; i < word.length(); i++) {
+                if (SpellDictionary.symbol(word.charAt(i)) < 0) {
+                    throw new IllegalArgumentException("Unsupported character in " + word);
+                }
+            }
+            builder.add(word);
+            last = word;
+        }
+        builder.write(args[1]);
+    }
+
+    private void add(String word) {
+        int common = 0;
+        while (common < word.length() && common < previous.length()
+                && word.charAt(common) == previous.charAt(common)) {
+            common++;
+        }
+        minimize(common);
+        Node node = common == 0 ? root : path.get(common - 1);
+        for (int i = common; i < word.length(); i++) {
+            Node child = new Node();
+            node.labels.add(word.charAt(i));
+            node.children.add(child);
+            path.add(child);
+            node = child;
+        }
+        node.isFinal = true;
+        previous = word;
+    }
+
+    // Replaces the nodes on the path below depth by registered equal ones
+    private void minimize(int depth) {
+        for (int i = path.size() - 1; i >= depth; i--) {
+            Node parent = i == 0 ? root : path.get(i - 1);
+            Node child = path.get(i);
+            String signature = child.signature();
+            Node existing = register.get(signature);
+            if (existing != null) {
+                parent.children.set(parent.children.size() - 1, existing);
+            } else {
+                child.id = nextId++;
+                register.put(signature, child);
+            }
+            path.remove(i);
+        }
+    }
+
+    /*
+     * Lays every node's edges out next to each other, the root's first
+     * after a placeholder edge so that no node starts at index 0; a target
+     * of 0 then means the edge leads to no further letters.
+     */
+    private void write(String file) throws IOException {
+        minimize(0);
+        Map<Node, Integer> starts = new IdentityHashMap<>();
+        List<Node> order = new ArrayList<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        starts.put(root, 1);
+        int edgeCount = 1;
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            order.add(node);
+            edgeCount += node.labels.size();
+            for (Node child : node.children) {
+                if (!child.children.isEmpty() && !starts.containsKey(child)) {
+                    starts.put(child, 0);
+                    queue.add(child);
+                }
+            }
+        }
+        int position = 1;
+        for (Node node : order) {
+            starts.put(node, position);
+            position += node.labels.size();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SpellDictionary.MAGIC);
+            out.writeInt(edgeCount);
+            // Placeholder edge
+            out.writeInt(0);
+            for (Node node : order) {
+                for (int i = 0; i < node.labels.size(); i++) {
+                    Node child = node.children.get(i);
+                    int edge = SpellDictionary.symbol(node.labels.get(i));
+                    if (child.isFinal) {
+                        edge |= SpellDictionary.FINAL;
+                    }
+                    if (i == node.labels.size() - 1) {
+                        edge |= SpellDictionary.LAST;
+                    }
+                    if (!child.children.isEmpty()) {
+                        edge |= starts.get(child) << SpellDictionary.TARGET_SHIFT;
+                    }
+                    out.writeInt(edge);
+                }
+            }
+        }
+    }
+}